@@ -0,0 +1,96 @@
+package bench;
+
+import common.ConcentrationException;
+import game.BoardKind;
+import game.GameBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The game engine on every legal classic board: dealing a board, playing
+ * a whole game, and the game over and printing calls the server makes
+ * after every reveal.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    /**
+     * the seed of the boards that are played, so each run plays the same game
+     */
+    private final static long SEED = 42;
+
+    @Param({"2", "4", "6"})
+    private int dim;
+
+    @Param({"OBJECT", "BITSET", "LARGE"})
+    private BoardKind kind;
+
+    /**
+     * the card of each reveal of a full game, index row * dim + col
+     */
+    private int[] script;
+    /**
+     * a board with half of its pairs matched
+     */
+    private GameBoard halfway;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws ConcentrationException {
+        script = Games.script(kind.create(dim, SEED));
+        halfway = kind.create(dim, SEED);
+        Games.play(halfway, script, script.length / 2 & ~1);
+        seed = 0;
+    }
+
+    /**
+     * A board is used up by a game, so every game gets a new one.  The gc
+     * profiler counts the new board against the game; the construct
+     * benchmark tells how much of it that is.
+     */
+    @State(Scope.Thread)
+    public static class Game {
+        private GameBoard board;
+
+        @Setup(Level.Invocation)
+        public void setUp(BoardBenchmark benchmark) throws ConcentrationException {
+            board = benchmark.kind.create(benchmark.dim, SEED);
+        }
+    }
+
+    @Benchmark
+    public GameBoard construct() throws ConcentrationException {
+        return kind.create(dim, seed++);
+    }
+
+    @Benchmark
+    public int fullGame(Game game) throws ConcentrationException {
+        return Games.play(game.board, script, script.length);
+    }
+
+    @Benchmark
+    public boolean gameOver() {
+        return halfway.gameOver();
+    }
+
+    @Benchmark
+    public String printBoard() {
+        return halfway.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import common.ConcentrationException;
+import game.GameBoard;
+
+import java.util.Arrays;
+
+/**
+ * Scripted games for the benchmarks.
+ */
+final class Games {
+    private Games() {
+    }
+
+    /**
+     * The reveals of a player with a perfect memory: it turns the cards
+     * over two at a time in order, and once every card has been seen it
+     * matches the pairs it saw but missed.  Almost every pair of the first
+     * pass is a mismatch, so both outcomes are well exercised.
+     *
+     * @param board a board that has not been played, to read the deal from
+     * @return the card of each reveal, index row * DIM + col
+     * @throws ConcentrationException never, the coordinates are all valid
+     */
+    static int[] script(GameBoard board) throws ConcentrationException {
+        int dim = board.getDIM();
+        int cards = dim * dim;
+        int[] symbols = new int[cards];
+        for (int card = 0; card < cards; ++card) {
+            symbols[card] = board.getSymbol(card / dim, card % dim);
+        }
+        int[] script = new int[cards * 2];
+        int[] seen = new int[cards / 2];
+        Arrays.fill(seen, -1);
+        int length = 0;
+        int[] missed = new int[cards];
+        int misses = 0;
+        for (int card = 0; card < cards; card += 2) {
+            script[length++] = card;
+            script[length++] = card + 1;
+            if (symbols[card] != symbols[card + 1]) {
+                missed[misses++] = card;
+                missed[misses++] = card + 1;
+            }
+        }
+        for (int i = 0; i < misses; ++i) {
+            int card = missed[i];
+            int other = seen[symbols[card]];
+            if (other < 0) {
+                seen[symbols[card]] = card;
+            } else {
+                script[length++] = other;
+                script[length++] = card;
+            }
+        }
+        return Arrays.copyOf(script, length);
+    }
+
+    /**
+     * Play the first reveals of a script.
+     *
+     * @param board the board
+     * @param script the reveals
+     * @param reveals how many of them to play
+     * @return the sum of the reveal outcomes, to keep the work alive
+     * @throws ConcentrationException if the script does not fit the board
+     */
+    static int play(GameBoard board, int[] script, int reveals) throws ConcentrationException {
+        int dim = board.getDIM();
+        int outcomes = 0;
+        for (int i = 0; i < reveals; ++i) {
+            outcomes += board.revealCard(script[i] / dim, script[i] % dim);
+        }
+        return outcomes;
+    }
+}
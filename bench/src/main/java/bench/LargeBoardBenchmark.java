@@ -0,0 +1,68 @@
+package bench;
+
+import common.ConcentrationException;
+import game.BoardKind;
+import game.GameBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dealing and playing the endurance boards, which take milliseconds each,
+ * so the times are reported per board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class LargeBoardBenchmark {
+    private final static long SEED = 42;
+
+    @Param({"64", "256", "1024"})
+    private int dim;
+
+    private int[] script;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws ConcentrationException {
+        script = Games.script(BoardKind.LARGE.create(dim, SEED));
+        seed = 0;
+    }
+
+    /**
+     * A fresh board for each game, see {@link BoardBenchmark.Game}.
+     */
+    @State(Scope.Thread)
+    public static class Game {
+        private GameBoard board;
+
+        @Setup(Level.Invocation)
+        public void setUp(LargeBoardBenchmark benchmark) throws ConcentrationException {
+            board = BoardKind.LARGE.create(benchmark.dim, SEED);
+        }
+    }
+
+    @Benchmark
+    public GameBoard construct() throws ConcentrationException {
+        return BoardKind.LARGE.create(dim, seed++);
+    }
+
+    @Benchmark
+    public int fullGame(Game game) throws ConcentrationException {
+        return Games.play(game.board, script, script.length);
+    }
+}
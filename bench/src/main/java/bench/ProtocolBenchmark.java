@@ -0,0 +1,181 @@
+package bench;
+
+import common.BinaryCodec;
+import common.BinaryProtocol;
+import common.ConcentrationException;
+import common.ConcentrationMessage;
+import common.ConcentrationProtocol;
+import common.TextCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the messages of a reveal.  The legacy benchmarks do
+ * it the way the server and controller first did, with String.format and
+ * println to a PrintWriter, and readLine and split; the others use
+ * {@link TextCodec} and {@link BinaryCodec} as the server and controller
+ * do now.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+    private int row;
+    private int col;
+    private char letter;
+
+    /**
+     * writes nowhere, but still encodes each line as the socket writer did
+     */
+    private PrintWriter writer;
+    private ByteBuffer out;
+
+    private byte[] cardLine;
+    private byte[] revealLine;
+    private ByteBuffer cardText;
+    private ByteBuffer matchText;
+    private ByteBuffer revealText;
+    private ByteBuffer cardBinary;
+    private TextCodec textCodec;
+    private ConcentrationMessage message;
+
+    @Setup
+    public void setUp() {
+        row = 3;
+        col = 5;
+        letter = 'K';
+        writer = new PrintWriter(OutputStream.nullOutputStream(), true);
+        out = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        cardLine = ascii("CARD 3 5 K");
+        revealLine = ascii("REVEAL 3 5");
+        cardText = ByteBuffer.wrap(ascii("CARD 3 5 K\n"));
+        matchText = ByteBuffer.wrap(ascii("MATCH 1 2 3 5\n"));
+        revealText = ByteBuffer.wrap(ascii("REVEAL 3 5\n"));
+        cardBinary = ByteBuffer.allocate(BinaryProtocol.CARD_SIZE);
+        BinaryCodec.putCard(cardBinary, row, col, letter);
+        cardBinary.flip();
+        textCodec = new TextCodec();
+        message = new ConcentrationMessage();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * WRITING
+     */
+
+    @Benchmark
+    public void formatCardLegacy() {
+        writer.println(String.format(ConcentrationProtocol.CARD_MSG, row, col, letter));
+    }
+
+    @Benchmark
+    public int formatCardText() {
+        out.clear();
+        TextCodec.putCard(out, row, col, letter);
+        return out.position();
+    }
+
+    @Benchmark
+    public int formatCardBinary() {
+        out.clear();
+        BinaryCodec.putCard(out, row, col, letter);
+        return out.position();
+    }
+
+    @Benchmark
+    public void formatMatchLegacy() {
+        writer.println(String.format(ConcentrationProtocol.MATCH_MSG, 1, 2, row, col));
+    }
+
+    @Benchmark
+    public int formatMatchText() {
+        out.clear();
+        TextCodec.putMatch(out, true, 1, 2, row, col);
+        return out.position();
+    }
+
+    @Benchmark
+    public void formatRevealLegacy() {
+        writer.println(String.format(ConcentrationProtocol.REVEAL_MSG, row, col));
+    }
+
+    @Benchmark
+    public int formatRevealText() {
+        out.clear();
+        TextCodec.putReveal(out, row, col);
+        return out.position();
+    }
+
+    /*
+     * READING
+     */
+
+    /**
+     * The controller's handling of a CARD line: readLine's String, then
+     * split and parseInt.
+     */
+    @Benchmark
+    public int parseCardLegacy() {
+        String line = new String(cardLine, StandardCharsets.US_ASCII);
+        String[] tokens = line.split(" ");
+        return Integer.parseInt(tokens[1]) + Integer.parseInt(tokens[2]) + tokens[3].charAt(0);
+    }
+
+    @Benchmark
+    public int parseCardText() throws ConcentrationException {
+        cardText.rewind();
+        textCodec.decode(cardText, message);
+        return message.getRow1() + message.getCol1() + message.getLetter();
+    }
+
+    @Benchmark
+    public int parseCardBinary() throws ConcentrationException {
+        cardBinary.rewind();
+        BinaryCodec.decode(cardBinary, message);
+        return message.getRow1() + message.getCol1() + message.getLetter();
+    }
+
+    @Benchmark
+    public int parseMatchText() throws ConcentrationException {
+        matchText.rewind();
+        textCodec.decode(matchText, message);
+        return message.getRow1() + message.getCol1() + message.getRow2() + message.getCol2();
+    }
+
+    /**
+     * The server's handling of a REVEAL line.
+     */
+    @Benchmark
+    public int parseRevealLegacy() {
+        String line = new String(revealLine, StandardCharsets.US_ASCII);
+        String[] tokens = line.split(" ");
+        return Integer.parseInt(tokens[1]) + Integer.parseInt(tokens[2]);
+    }
+
+    @Benchmark
+    public int parseRevealText() throws ConcentrationException {
+        revealText.rewind();
+        textCodec.decode(revealText, message);
+        return message.getRow1() + message.getCol1();
+    }
+}
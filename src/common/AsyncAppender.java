@@ -0,0 +1,130 @@
+package common;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log messages from any number of threads to a stream on a single
+ * background thread.  Messages go through a bounded ring buffer: a producer
+ * claims a slot with one compare and set and never blocks, and a message
+ * that finds the ring full is dropped and counted instead.
+ */
+class AsyncAppender implements Runnable {
+    /**
+     * how long the writer sleeps when the ring is empty
+     */
+    private final static long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A message waiting to be formatted.
+     */
+    private static class Record {
+        private final String format;
+        private final Object[] args;
+
+        private Record(String format, Object[] args) {
+            this.format = format;
+            this.args = args;
+        }
+
+        private String format() {
+            return args == null || args.length == 0 ? format : String.format(format, args);
+        }
+    }
+
+    private final PrintStream out;
+    private final AtomicReferenceArray<Record> ring;
+    private final int mask;
+    /**
+     * the next sequence a producer claims
+     */
+    private final AtomicLong tail;
+    /**
+     * the next sequence the writer reads; only the writer changes it
+     */
+    private volatile long head;
+    /**
+     * the number of messages lost to a full ring
+     */
+    private final AtomicLong dropped;
+
+    /**
+     * Create an appender and start its writer thread.
+     *
+     * @param out where the messages go
+     * @param capacity the size of the ring, rounded up to a power of two
+     */
+    AsyncAppender(PrintStream out, int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.out = out;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = 0;
+        this.dropped = new AtomicLong();
+        Thread writer = new Thread(this, "concentration-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "concentration-log-drain"));
+    }
+
+    /**
+     * Queue a message.  Never blocks.
+     *
+     * @param format the format string
+     * @param args the format arguments
+     * @return false if the ring was full and the message was dropped
+     */
+    boolean append(String format, Object[] args) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= ring.length()) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        ring.lazySet((int) (sequence & mask), new Record(format, args));
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            int index = (int) (head & mask);
+            Record record = ring.get(index);
+            if (record == null) {
+                // empty, or a producer has claimed the slot but not filled it yet
+                out.flush();
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                continue;
+            }
+            ring.lazySet(index, null);
+            head = head + 1;
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                out.println("(" + lost + " log messages dropped)");
+            }
+            try {
+                out.println(record.format());
+            } catch (RuntimeException e) {
+                out.println("Bad log message " + record.format + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Give the writer up to a second to empty the ring, for the last
+     * messages before the JVM exits.
+     */
+    private void drain() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (head < tail.get() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,273 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes the messages of the {@link BinaryProtocol}.
+ */
+public final class BinaryCodec {
+    private BinaryCodec() {
+    }
+
+    /**
+     * Write a REVEAL message.
+     *
+     * @param out the buffer to write to
+     * @param row the row of the card
+     * @param col the column of the card
+     */
+    public static void putReveal(ByteBuffer out, int row, int col) {
+        if (row > BinaryProtocol.MAX_NARROW || col > BinaryProtocol.MAX_NARROW) {
+            out.put(BinaryProtocol.WIDE_REVEAL).putShort((short) row).putShort((short) col);
+        } else {
+            out.put(BinaryProtocol.REVEAL).put((byte) row).put((byte) col);
+        }
+    }
+
+    /**
+     * Write a REVEAL_PAIR message.
+     *
+     * @param out the buffer to write to
+     * @param row1 the row of the first card
+     * @param col1 the column of the first card
+     * @param row2 the row of the second card
+     * @param col2 the column of the second card
+     */
+    public static void putRevealPair(ByteBuffer out, int row1, int col1, int row2, int col2) {
+        if (Math.max(Math.max(row1, col1), Math.max(row2, col2)) > BinaryProtocol.MAX_NARROW) {
+            out.put(BinaryProtocol.WIDE_REVEAL_PAIR)
+                    .putShort((short) row1).putShort((short) col1).putShort((short) row2).putShort((short) col2);
+        } else {
+            out.put(BinaryProtocol.REVEAL_PAIR).put((byte) row1).put((byte) col1).put((byte) row2).put((byte) col2);
+        }
+    }
+
+    /**
+     * Write a CARD message, or a SYMBOL message if a coordinate needs it.
+     *
+     * @param out the buffer to write to
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param letter the letter of the card
+     */
+    public static void putCard(ByteBuffer out, int row, int col, char letter) {
+        if ((row | col) > BinaryProtocol.MAX_NARROW) {
+            putSymbol(out, row, col, letter - 'A');
+        } else {
+            out.put(BinaryProtocol.CARD).put((byte) row).put((byte) col).put((byte) letter);
+        }
+    }
+
+    /**
+     * Write a SYMBOL message.
+     *
+     * @param out the buffer to write to
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param symbol the symbol of the card
+     */
+    public static void putSymbol(ByteBuffer out, int row, int col, int symbol) {
+        out.put(BinaryProtocol.SYMBOL).putShort((short) row).putShort((short) col).putInt(symbol);
+    }
+
+    /**
+     * Write a MATCH or MISMATCH message, wide if a coordinate needs it.
+     *
+     * @param out the buffer to write to
+     * @param match whether the cards matched
+     * @param row1 the row of the first card
+     * @param col1 the column of the first card
+     * @param row2 the row of the second card
+     * @param col2 the column of the second card
+     */
+    public static void putMatch(ByteBuffer out, boolean match, int row1, int col1, int row2, int col2) {
+        if ((row1 | col1 | row2 | col2) > BinaryProtocol.MAX_NARROW) {
+            out.put(match ? BinaryProtocol.WIDE_MATCH : BinaryProtocol.WIDE_MISMATCH)
+                    .putShort((short) row1).putShort((short) col1).putShort((short) row2).putShort((short) col2);
+        } else {
+            out.put(match ? BinaryProtocol.MATCH : BinaryProtocol.MISMATCH)
+                    .put((byte) row1).put((byte) col1).put((byte) row2).put((byte) col2);
+        }
+    }
+
+    /**
+     * Write a GAME_OVER message.
+     *
+     * @param out the buffer to write to
+     */
+    public static void putGameOver(ByteBuffer out) {
+        out.put(BinaryProtocol.GAME_OVER);
+    }
+
+    /**
+     * Write a ROOM message.
+     *
+     * @param out the buffer to write to
+     * @param seat the seat of the player the message is sent to
+     * @param players the number of players in the room
+     */
+    public static void putRoom(ByteBuffer out, int seat, int players) {
+        out.put(BinaryProtocol.ROOM).put((byte) seat).put((byte) players);
+    }
+
+    /**
+     * Write a TURN message.
+     *
+     * @param out the buffer to write to
+     * @param seat the seat of the player to reveal next
+     */
+    public static void putTurn(ByteBuffer out, int seat) {
+        out.put(BinaryProtocol.TURN).put((byte) seat);
+    }
+
+    /**
+     * Write a SCORE message.
+     *
+     * @param out the buffer to write to
+     * @param seat the seat of the player
+     * @param matches the pairs the player has matched
+     */
+    public static void putScore(ByteBuffer out, int seat, int matches) {
+        out.put(BinaryProtocol.SCORE).put((byte) seat).putInt(matches);
+    }
+
+    /**
+     * Write an ERROR message.  Text beyond 255 characters is cut off.
+     *
+     * @param out the buffer to write to
+     * @param text the error text
+     */
+    public static void putError(ByteBuffer out, String text) {
+        int length = Math.min(text.length(), 255);
+        out.put(BinaryProtocol.ERROR).put((byte) length);
+        for (int i = 0; i < length; ++i) {
+            out.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * The size of the message starting at the buffer's position.
+     *
+     * @param in the buffer to read from
+     * @return the size including the opcode, or 0 if not enough bytes have
+     * arrived to tell
+     * @throws ConcentrationException if the opcode is unknown
+     */
+    public static int frameSize(ByteBuffer in) throws ConcentrationException {
+        if (!in.hasRemaining()) {
+            return 0;
+        }
+        byte opcode = in.get(in.position());
+        switch (opcode) {
+            case BinaryProtocol.CARD:
+                return BinaryProtocol.CARD_SIZE;
+            case BinaryProtocol.MATCH:
+            case BinaryProtocol.MISMATCH:
+                return BinaryProtocol.MATCH_SIZE;
+            case BinaryProtocol.GAME_OVER:
+                return BinaryProtocol.GAME_OVER_SIZE;
+            case BinaryProtocol.REVEAL:
+                return BinaryProtocol.REVEAL_SIZE;
+            case BinaryProtocol.SYMBOL:
+                return BinaryProtocol.SYMBOL_SIZE;
+            case BinaryProtocol.WIDE_MATCH:
+            case BinaryProtocol.WIDE_MISMATCH:
+                return BinaryProtocol.WIDE_MATCH_SIZE;
+            case BinaryProtocol.WIDE_REVEAL:
+                return BinaryProtocol.WIDE_REVEAL_SIZE;
+            case BinaryProtocol.REVEAL_PAIR:
+                return BinaryProtocol.REVEAL_PAIR_SIZE;
+            case BinaryProtocol.WIDE_REVEAL_PAIR:
+                return BinaryProtocol.WIDE_REVEAL_PAIR_SIZE;
+            case BinaryProtocol.ROOM:
+                return BinaryProtocol.ROOM_SIZE;
+            case BinaryProtocol.TURN:
+                return BinaryProtocol.TURN_SIZE;
+            case BinaryProtocol.SCORE:
+                return BinaryProtocol.SCORE_SIZE;
+            case BinaryProtocol.ERROR:
+                if (in.remaining() < BinaryProtocol.ERROR_HEADER_SIZE) {
+                    return 0;
+                }
+                return BinaryProtocol.ERROR_HEADER_SIZE + (in.get(in.position() + 1) & 0xff);
+            default:
+                throw new ConcentrationException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * Read one message if all of it has arrived.
+     *
+     * @param in the buffer to read from
+     * @param message where to put the decoded message
+     * @return true if a message was read, false if more bytes are needed
+     * @throws ConcentrationException if the opcode is unknown
+     */
+    public static boolean decode(ByteBuffer in, ConcentrationMessage message) throws ConcentrationException {
+        int size = frameSize(in);
+        if (size == 0 || in.remaining() < size) {
+            return false;
+        }
+        byte opcode = in.get();
+        switch (opcode) {
+            case BinaryProtocol.CARD:
+                message.setCard(unsigned(in), unsigned(in), (char) unsigned(in));
+                break;
+            case BinaryProtocol.MATCH:
+            case BinaryProtocol.MISMATCH:
+                message.set(opcode == BinaryProtocol.MATCH ? ConcentrationMessage.Type.MATCH
+                                : ConcentrationMessage.Type.MISMATCH,
+                        unsigned(in), unsigned(in), unsigned(in), unsigned(in));
+                break;
+            case BinaryProtocol.GAME_OVER:
+                message.set(ConcentrationMessage.Type.GAME_OVER, 0, 0, 0, 0);
+                break;
+            case BinaryProtocol.REVEAL:
+                message.set(ConcentrationMessage.Type.REVEAL, unsigned(in), unsigned(in), 0, 0);
+                break;
+            case BinaryProtocol.SYMBOL:
+                message.setSymbol(unsignedShort(in), unsignedShort(in), in.getInt());
+                break;
+            case BinaryProtocol.WIDE_MATCH:
+            case BinaryProtocol.WIDE_MISMATCH:
+                message.set(opcode == BinaryProtocol.WIDE_MATCH ? ConcentrationMessage.Type.MATCH
+                                : ConcentrationMessage.Type.MISMATCH,
+                        unsignedShort(in), unsignedShort(in), unsignedShort(in), unsignedShort(in));
+                break;
+            case BinaryProtocol.WIDE_REVEAL:
+                message.set(ConcentrationMessage.Type.REVEAL, unsignedShort(in), unsignedShort(in), 0, 0);
+                break;
+            case BinaryProtocol.REVEAL_PAIR:
+                message.set(ConcentrationMessage.Type.REVEAL_PAIR, unsigned(in), unsigned(in), unsigned(in),
+                        unsigned(in));
+                break;
+            case BinaryProtocol.WIDE_REVEAL_PAIR:
+                message.set(ConcentrationMessage.Type.REVEAL_PAIR, unsignedShort(in), unsignedShort(in),
+                        unsignedShort(in), unsignedShort(in));
+                break;
+            case BinaryProtocol.ROOM:
+                message.set(ConcentrationMessage.Type.ROOM, unsigned(in), unsigned(in), 0, 0);
+                break;
+            case BinaryProtocol.TURN:
+                message.set(ConcentrationMessage.Type.TURN, unsigned(in), 0, 0, 0);
+                break;
+            case BinaryProtocol.SCORE:
+                message.set(ConcentrationMessage.Type.SCORE, unsigned(in), in.getInt(), 0, 0);
+                break;
+            default:
+                byte[] text = new byte[unsigned(in)];
+                in.get(text);
+                message.setError(new String(text, StandardCharsets.US_ASCII));
+        }
+        return true;
+    }
+
+    private static int unsigned(ByteBuffer in) {
+        return in.get() & 0xff;
+    }
+
+    private static int unsignedShort(ByteBuffer in) {
+        return in.getShort() & 0xffff;
+    }
+}
@@ -0,0 +1,95 @@
+package common;
+
+/**
+ * The compact binary form of the Concentration protocol.  Every message is
+ * a one byte opcode followed by a fixed number of unsigned bytes, so a
+ * message can be read and written without any text handling.
+ * <p>
+ * The connection always starts in the text protocol with the server's
+ * BOARD_DIM message.  A client that wants the binary form then sends the
+ * text line {@link #BINARY}; a server that supports it answers with the
+ * same line, and from then on both directions use binary messages only.
+ * A server that does not support it closes the connection instead.
+ * <p>
+ * Coordinates past 255 do not fit in a byte, so large boards use the
+ * WIDE variants, whose coordinates are unsigned 16 bit big endian numbers.
+ * Either side picks the narrow form whenever the coordinates fit and must
+ * accept both.
+ */
+public interface BinaryProtocol {
+    /** the text request and answer that switch a connection to binary */
+    String BINARY = "BINARY";
+
+    /*
+     * SERVER -> CLIENT OPCODES
+     */
+
+    /** followed by the row, column and letter of the card, e.g. CARD 0 1 A */
+    byte CARD = 1;
+    /** followed by the row and column of the two cards, e.g. MATCH 0 1 3 2 */
+    byte MATCH = 2;
+    /** followed by the row and column of the two cards, e.g. MISMATCH 0 1 3 2 */
+    byte MISMATCH = 3;
+    /** no payload */
+    byte GAME_OVER = 4;
+    /** followed by a length byte and that many bytes of ASCII text */
+    byte ERROR = 5;
+    /** followed by the wide row and column and a 32 bit symbol, for a card with no letter */
+    byte SYMBOL = 6;
+    /** followed by the wide row and column of the two cards */
+    byte WIDE_MATCH = 7;
+    /** followed by the wide row and column of the two cards */
+    byte WIDE_MISMATCH = 8;
+    /** followed by the player's seat and the number of players, e.g. ROOM 1 4 */
+    byte ROOM = 9;
+    /** followed by the seat of the player to reveal next, e.g. TURN 2 */
+    byte TURN = 10;
+    /** followed by a seat and a 32 bit number of matches, e.g. SCORE 2 5 */
+    byte SCORE = 11;
+
+    /*
+     * CLIENT -> SERVER OPCODES
+     */
+
+    /** followed by the row and column of the card to reveal */
+    byte REVEAL = 16;
+    /** followed by the wide row and column of the card to reveal */
+    byte WIDE_REVEAL = 17;
+    /** followed by the row and column of the two cards to reveal */
+    byte REVEAL_PAIR = 18;
+    /** followed by the wide row and column of the two cards to reveal */
+    byte WIDE_REVEAL_PAIR = 19;
+
+    /*
+     * MESSAGE SIZES, INCLUDING THE OPCODE
+     */
+
+    /** size of a CARD message */
+    int CARD_SIZE = 4;
+    /** size of a MATCH or MISMATCH message */
+    int MATCH_SIZE = 5;
+    /** size of a GAME_OVER message */
+    int GAME_OVER_SIZE = 1;
+    /** size of an ERROR message before its text */
+    int ERROR_HEADER_SIZE = 2;
+    /** size of a REVEAL message */
+    int REVEAL_SIZE = 3;
+    /** size of a SYMBOL message */
+    int SYMBOL_SIZE = 9;
+    /** size of a WIDE_MATCH or WIDE_MISMATCH message */
+    int WIDE_MATCH_SIZE = 9;
+    /** size of a WIDE_REVEAL message */
+    int WIDE_REVEAL_SIZE = 5;
+    /** size of a REVEAL_PAIR message */
+    int REVEAL_PAIR_SIZE = 5;
+    /** size of a WIDE_REVEAL_PAIR message */
+    int WIDE_REVEAL_PAIR_SIZE = 9;
+    /** size of a ROOM message */
+    int ROOM_SIZE = 3;
+    /** size of a TURN message */
+    int TURN_SIZE = 2;
+    /** size of a SCORE message */
+    int SCORE_SIZE = 6;
+    /** the largest coordinate of the narrow messages */
+    int MAX_NARROW = 255;
+}
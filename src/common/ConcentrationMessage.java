@@ -0,0 +1,174 @@
+package common;
+
+/**
+ * A decoded protocol message.  Instances are mutable so that one can be
+ * reused for every message read from a connection.
+ */
+public class ConcentrationMessage {
+    /**
+     * The kinds of message in the protocol.
+     */
+    public enum Type {
+        BOARD_DIM,
+        ERROR,
+        CARD,
+        MATCH,
+        MISMATCH,
+        GAME_OVER,
+        REVEAL,
+        /** a REVEAL or REVEAL_PAIR whose coordinates are not numbers */
+        INVALID_REVEAL,
+        /** two reveals answered together */
+        REVEAL_PAIR,
+        /** the request or answer that switches to the binary protocol */
+        BINARY,
+        /** the player's seat in a shared room, and the number of players */
+        ROOM,
+        /** the seat of the player to reveal next */
+        TURN,
+        /** a seat and its matches so far */
+        SCORE,
+        /** the token to resume the game with */
+        SESSION,
+        /** the state of a resumed game */
+        SNAPSHOT,
+        /** the request to take up a game again */
+        RESUME,
+        /** a line that is not a protocol message */
+        UNKNOWN
+    }
+
+    private Type type;
+    private int row1;
+    private int col1;
+    private int row2;
+    private int col2;
+    private char letter;
+    private int symbol;
+    private String text;
+
+    /**
+     * Make this a message with up to two coordinates.  BOARD_DIM keeps its
+     * dimension in the first row; ROOM, TURN and SCORE keep the seat in the
+     * first row and the number of players or matches in the first column.
+     *
+     * @param type the message type
+     * @param row1 the row of the first card
+     * @param col1 the column of the first card
+     * @param row2 the row of the second card
+     * @param col2 the column of the second card
+     * @return this message
+     */
+    public ConcentrationMessage set(Type type, int row1, int col1, int row2, int col2) {
+        this.type = type;
+        this.row1 = row1;
+        this.col1 = col1;
+        this.row2 = row2;
+        this.col2 = col2;
+        this.letter = 0;
+        this.symbol = 0;
+        this.text = null;
+        return this;
+    }
+
+    /**
+     * Make this a CARD message.
+     *
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param letter the letter of the card
+     * @return this message
+     */
+    public ConcentrationMessage setCard(int row, int col, char letter) {
+        set(Type.CARD, row, col, 0, 0);
+        this.letter = letter;
+        this.symbol = letter - 'A';
+        return this;
+    }
+
+    /**
+     * Make this a CARD message for a card that may have no letter, as sent
+     * by a SYMBOL message.
+     *
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param symbol the symbol of the card
+     * @return this message
+     */
+    public ConcentrationMessage setSymbol(int row, int col, int symbol) {
+        set(Type.CARD, row, col, 0, 0);
+        this.letter = symbol < ConcentrationProtocol.LETTERS ? (char) ('A' + symbol) : 0;
+        this.symbol = symbol;
+        return this;
+    }
+
+    /**
+     * Make this a message that carries text: SESSION and RESUME keep the
+     * token in the text, SNAPSHOT keeps the dimension in the first row and
+     * the cards in the text.
+     *
+     * @param type the message type
+     * @param row1 the first row
+     * @param text the text
+     * @return this message
+     */
+    public ConcentrationMessage setText(Type type, int row1, String text) {
+        set(type, row1, 0, 0, 0);
+        this.text = text;
+        return this;
+    }
+
+    /**
+     * Make this an ERROR message.
+     *
+     * @param text the error text
+     * @return this message
+     */
+    public ConcentrationMessage setError(String text) {
+        set(Type.ERROR, 0, 0, 0, 0);
+        this.text = text;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getRow1() {
+        return row1;
+    }
+
+    public int getCol1() {
+        return col1;
+    }
+
+    public int getRow2() {
+        return row2;
+    }
+
+    public int getCol2() {
+        return col2;
+    }
+
+    /**
+     * Get the letter of a CARD message, 0 if its symbol has no letter.
+     *
+     * @return the letter
+     */
+    public char getLetter() {
+        return letter;
+    }
+
+    /**
+     * Get the symbol of a CARD message, 0 for the letter A.
+     *
+     * @return the symbol
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
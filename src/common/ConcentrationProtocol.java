@@ -23,6 +23,32 @@ public interface ConcentrationProtocol {
     String MISMATCH = "MISMATCH";
     /** the game is over */
     String GAME_OVER = "GAME_OVER";
+    /** details of a card whose symbol has no letter, on large boards */
+    String SYMBOL = "SYMBOL";
+    /** the player's seat in a shared room, and how many players share it */
+    String ROOM = "ROOM";
+    /** whose turn it is in a shared room */
+    String TURN = "TURN";
+    /** the number of pairs a player of a shared room has matched */
+    String SCORE = "SCORE";
+    /** the token to resume the game with if the connection is lost */
+    String SESSION = "SESSION";
+    /** the state of a resumed game */
+    String SNAPSHOT = "SNAPSHOT";
+
+    /**
+     * the number of symbols that have a letter, A to Z.  A card with a
+     * higher symbol is sent as a SYMBOL message instead of a CARD message.
+     */
+    int LETTERS = 26;
+
+    /**
+     * the characters of the symbols of the revealed cards in a SNAPSHOT,
+     * the letters first; boards with more pairs cannot be resumed
+     */
+    String SNAPSHOT_SYMBOLS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    /** the character of a hidden card in a SNAPSHOT */
+    char SNAPSHOT_HIDDEN = '.';
 
     /*
      * SERVER -> CLIENT FULL MESSAGE FORMAT STRINGS
@@ -50,6 +76,37 @@ public interface ConcentrationProtocol {
     /** the game over message, e.g. "GAME_OVER" */
     String GAME_OVER_MSG = GAME_OVER;
 
+    /** the card detail message with a numbered symbol, e.g. "SYMBOL 40 7 1234" */
+    String SYMBOL_MSG = SYMBOL + " %d %d %d";
+
+    /**
+     * the room message with the player's seat and the number of players,
+     * sent after BOARD_DIM in a shared room: e.g. "ROOM 1 4"
+     */
+    String ROOM_MSG = ROOM + " %d %d";
+
+    /** the turn message with the seat of the player to reveal next, e.g. "TURN 2" */
+    String TURN_MSG = TURN + " %d";
+
+    /** the score message with a seat and its matches so far, e.g. "SCORE 2 5" */
+    String SCORE_MSG = SCORE + " %d %d";
+
+    /**
+     * the session message with the token of the game, sent after BOARD_DIM
+     * by a server that keeps the games of lost connections:
+     * e.g. "SESSION 9f86d081884c7d65"
+     */
+    String SESSION_MSG = SESSION + " %s";
+
+    /**
+     * the snapshot message, the answer to RESUME, with the dimension of the
+     * board and one character per card, row by row: {@link #SNAPSHOT_HIDDEN}
+     * for a hidden card, else its symbol from {@link #SNAPSHOT_SYMBOLS}.
+     * The matched cards and the first card of an unfinished pair are
+     * revealed.  e.g. "SNAPSHOT 4 A..A...C........"
+     */
+    String SNAPSHOT_MSG = SNAPSHOT + " %d %s";
+
     /*
      * SERVER -> CLIENT MESSAGE HEADERS
      */
@@ -59,4 +116,33 @@ public interface ConcentrationProtocol {
 
     /** the reveal message with the card coordinate, e.g. "REVEAL 0 2" */
     String REVEAL_MSG = REVEAL + " %d %d";
+
+    /**
+     * the message to reveal two cards at once; the server answers with
+     * both CARD messages and the MATCH or MISMATCH together
+     */
+    String REVEAL_PAIR = "REVEAL_PAIR";
+
+    /** the pair reveal message with both card coordinates, e.g. "REVEAL_PAIR 0 2 3 1" */
+    String REVEAL_PAIR_MSG = REVEAL_PAIR + " %d %d %d %d";
+
+    /**
+     * the message to take up a game again after a lost connection, sent in
+     * text right after BOARD_DIM on a new connection; the server answers
+     * with SNAPSHOT and the game goes on from there, or with ERROR and the
+     * new game goes on instead
+     */
+    String RESUME = "RESUME";
+
+    /** the resume message with the token from SESSION, e.g. "RESUME 9f86d081884c7d65" */
+    String RESUME_MSG = RESUME + " %s";
+
+    /** the message to watch a running game, sent to the spectator port */
+    String WATCH = "WATCH";
+
+    /**
+     * the watch message with the id of the game, the seed of its board:
+     * e.g. "WATCH -4512334910394419571"
+     */
+    String WATCH_MSG = WATCH + " %d";
 }
@@ -0,0 +1,165 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in the style of HdrHistogram: values are
+ * counted in buckets that double in width, each split into 64 equal
+ * sub-buckets, so any recorded value is reported within 1/64 of its size
+ * whatever its magnitude, in a fixed 30KB.  Recording is a few atomic
+ * increments and never blocks, so any number of threads can share one.
+ * Reading while others record gives a consistent enough picture for
+ * reporting, but not an atomic snapshot.
+ */
+public class LatencyHistogram {
+    /**
+     * values below this are counted exactly, one bucket each
+     */
+    private final static int LINEAR = 128;
+    /**
+     * the sub-buckets of each doubling above {@link #LINEAR}
+     */
+    private final static int SUB_BUCKETS = 64;
+    /**
+     * enough buckets for every positive long
+     */
+    private final static int BUCKETS = LINEAR + (63 - 7) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Count a value.  Negative values count as 0.
+     *
+     * @param value the value, usually nanoseconds
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long current;
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // another thread raised the max, try again against its value
+        }
+    }
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the sum of the values recorded.
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Get the largest value recorded, exactly.
+     *
+     * @return the max, 0 if empty
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the values recorded.
+     *
+     * @return the mean, 0 if empty
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Get the value below which the given percentage of the values fall,
+     * as the highest value of its bucket.
+     *
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the value, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Add the counts of another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; ++i) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+            // another thread raised the max, try again against its value
+        }
+    }
+
+    /**
+     * The bucket of a value: its top seven bits, and how far they were
+     * shifted to get there.
+     */
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        int top = (int) (value >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    private static long highestValue(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long top = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,111 @@
+package common;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+/**
+ * A small level gated logger.  Messages are handed to an asynchronous
+ * appender as a format string and its arguments, and only formatted on the
+ * appender's thread, so a logging call never waits on the console.
+ * <p>
+ * A call to a disabled level returns right away, but its arguments have
+ * already been evaluated and boxed by then.  Hot paths should therefore
+ * test {@link #isEnabled} before building arguments.  The level starts at
+ * the value of the system property "concentration.log" (default INFO).
+ */
+public final class Log {
+    /**
+     * The levels, from the most to the least detailed.
+     */
+    public enum Level {
+        /** full board dumps */
+        TRACE,
+        /** every message sent and received */
+        DEBUG,
+        /** connections and games coming and going */
+        INFO,
+        /** something went wrong with one client */
+        WARN,
+        /** something went wrong with the server */
+        ERROR,
+        /** nothing is logged */
+        OFF
+    }
+
+    private static volatile Level level = Level.valueOf(System.getProperty("concentration.log", "INFO").toUpperCase());
+
+    /**
+     * the appender owns its own buffered stream on standard output, so the
+     * writer thread can batch lines instead of flushing every one
+     */
+    private static final AsyncAppender appender = new AsyncAppender(
+            new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false), 8192);
+
+    private Log() {
+    }
+
+    /**
+     * Set the least severe level that is logged.
+     *
+     * @param newLevel the level
+     */
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * Get the least severe level that is logged.
+     *
+     * @return the level
+     */
+    public static Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Would a message of this level be logged?
+     *
+     * @param messageLevel the level of the message
+     * @return whether it is enabled
+     */
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.ordinal() >= level.ordinal();
+    }
+
+    public static void trace(String format, Object... args) {
+        log(Level.TRACE, format, args);
+    }
+
+    public static void debug(String format, Object... args) {
+        log(Level.DEBUG, format, args);
+    }
+
+    public static void info(String format, Object... args) {
+        log(Level.INFO, format, args);
+    }
+
+    public static void warn(String format, Object... args) {
+        log(Level.WARN, format, args);
+    }
+
+    public static void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
+    }
+
+    /**
+     * Hand a message to the appender if its level is enabled.  The
+     * arguments are formatted later, so they should not change afterwards.
+     *
+     * @param messageLevel the level of the message
+     * @param format a {@link String#format} format, used as is when there
+     *               are no arguments
+     * @param args the format arguments
+     */
+    public static void log(Level messageLevel, String format, Object... args) {
+        if (isEnabled(messageLevel)) {
+            appender.append(format, args);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One end of an in-memory connection: two bounded byte queues, one for
+ * each direction.  Readers and writers block like they would on a socket,
+ * but no kernel is involved, so both ends can run in one JVM on any kind
+ * of thread.  No monitors are held while waiting, so virtual threads never
+ * pin their carrier.
+ */
+public class PipeTransport implements Transport {
+    /**
+     * the bytes going one way
+     */
+    private final static class Pipe {
+        private final byte[] bytes;
+        /**
+         * where the oldest unread byte is
+         */
+        private int head;
+        private int count;
+        private boolean closed;
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * signalled when bytes are added or taken, or the pipe is closed
+         */
+        private final Condition changed = lock.newCondition();
+
+        private Pipe(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private int read(ByteBuffer dst) {
+            lock.lock();
+            try {
+                while (count == 0 && !closed) {
+                    changed.awaitUninterruptibly();
+                }
+                if (count == 0) {
+                    return -1;
+                }
+                int total = Math.min(count, dst.remaining());
+                int first = Math.min(total, bytes.length - head);
+                dst.put(bytes, head, first);
+                dst.put(bytes, 0, total - first);
+                head = (head + total) % bytes.length;
+                count -= total;
+                changed.signalAll();
+                return total;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void write(ByteBuffer src) throws IOException {
+            lock.lock();
+            try {
+                while (src.hasRemaining()) {
+                    while (count == bytes.length && !closed) {
+                        changed.awaitUninterruptibly();
+                    }
+                    if (closed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    int tail = (head + count) % bytes.length;
+                    int total = Math.min(bytes.length - count, src.remaining());
+                    int first = Math.min(total, bytes.length - tail);
+                    src.get(bytes, tail, first);
+                    src.get(bytes, 0, total - first);
+                    count += total;
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                closed = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final Pipe in;
+    private final Pipe out;
+    private final PipeTransport peer;
+
+    /**
+     * Create a connection and return one end of it.
+     *
+     * @param capacity how many bytes each direction holds before a writer
+     *                 has to wait
+     */
+    public PipeTransport(int capacity) {
+        this.in = new Pipe(capacity);
+        this.out = new Pipe(capacity);
+        this.peer = new PipeTransport(this);
+    }
+
+    private PipeTransport(PipeTransport peer) {
+        this.in = peer.out;
+        this.out = peer.in;
+        this.peer = peer;
+    }
+
+    /**
+     * Get the other end of the connection.
+     *
+     * @return the other end
+     */
+    public PipeTransport getPeer() {
+        return this.peer;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        return in.read(dst);
+    }
+
+    @Override
+    public void write(ByteBuffer src) throws IOException {
+        out.write(src);
+    }
+
+    /**
+     * Close this end.  The other end reads what was already written, then
+     * the end of the stream; its writes fail from now on.
+     */
+    @Override
+    public void close() {
+        out.close();
+        in.close();
+    }
+
+    @Override
+    public String toString() {
+        return "PipeTransport@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
@@ -0,0 +1,56 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * A transport over a connected TCP socket.  Every message is small and
+ * waits for an answer, so Nagle's algorithm is turned off.
+ */
+public class SocketTransport implements Transport {
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Wrap a connected socket.
+     *
+     * @param socket the socket, closed along with the transport
+     * @throws IOException if the socket cannot be set up
+     */
+    public SocketTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = socket.getInputStream();
+        this.out = socket.getOutputStream();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int count = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+        if (count > 0) {
+            dst.position(dst.position() + count);
+        }
+        return count;
+    }
+
+    @Override
+    public void write(ByteBuffer src) throws IOException {
+        // one write per message, so no buffered stream is needed
+        out.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+        src.position(src.limit());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public String toString() {
+        return socket.toString();
+    }
+}
@@ -0,0 +1,500 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes the text form of the {@link ConcentrationProtocol}
+ * straight from and into byte buffers.  The bytes are exactly those of the
+ * format strings in the protocol followed by the platform line separator,
+ * as a PrintWriter would write them, but no Strings or arrays are created
+ * for the coordinates and letters in between.  One codec can be reused for
+ * every message read from a connection; the encoders keep no state.
+ */
+public class TextCodec {
+    /**
+     * messages are short, a longer line is not a valid message
+     */
+    public final static int MAX_LINE = 256;
+    /**
+     * the line terminator written after every message
+     */
+    private final static byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final static byte[] BOARD_DIM = ascii(ConcentrationProtocol.BOARD_DIM);
+    private final static byte[] ERROR = ascii(ConcentrationProtocol.ERROR);
+    private final static byte[] CARD = ascii(ConcentrationProtocol.CARD);
+    private final static byte[] MATCH = ascii(ConcentrationProtocol.MATCH);
+    private final static byte[] MISMATCH = ascii(ConcentrationProtocol.MISMATCH);
+    private final static byte[] GAME_OVER = ascii(ConcentrationProtocol.GAME_OVER);
+    private final static byte[] SYMBOL = ascii(ConcentrationProtocol.SYMBOL);
+    private final static byte[] ROOM = ascii(ConcentrationProtocol.ROOM);
+    private final static byte[] TURN = ascii(ConcentrationProtocol.TURN);
+    private final static byte[] SCORE = ascii(ConcentrationProtocol.SCORE);
+    private final static byte[] SESSION = ascii(ConcentrationProtocol.SESSION);
+    private final static byte[] SNAPSHOT = ascii(ConcentrationProtocol.SNAPSHOT);
+    private final static byte[] RESUME = ascii(ConcentrationProtocol.RESUME);
+    private final static byte[] REVEAL = ascii(ConcentrationProtocol.REVEAL);
+    private final static byte[] REVEAL_PAIR = ascii(ConcentrationProtocol.REVEAL_PAIR);
+    private final static byte[] BINARY = ascii(BinaryProtocol.BINARY);
+
+    /**
+     * the buffer being decoded
+     */
+    private ByteBuffer in;
+    /**
+     * the next byte of the line to look at
+     */
+    private int cursor;
+    /**
+     * the end of the line, without its terminator
+     */
+    private int end;
+    /**
+     * did every number of the line parse?
+     */
+    private boolean valid;
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * ENCODERS
+     */
+
+    /**
+     * Write a BOARD_DIM message, e.g. "BOARD_DIM 4".
+     *
+     * @param out the buffer to write to
+     * @param dim the square dimension of the board
+     */
+    public static void putBoardDim(ByteBuffer out, int dim) {
+        out.put(BOARD_DIM).put((byte) ' ');
+        putInt(out, dim);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a CARD message, e.g. "CARD 0 1 A".
+     *
+     * @param out the buffer to write to
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param letter the letter of the card
+     */
+    public static void putCard(ByteBuffer out, int row, int col, char letter) {
+        out.put(CARD).put((byte) ' ');
+        putInt(out, row);
+        out.put((byte) ' ');
+        putInt(out, col);
+        out.put((byte) ' ').put((byte) letter).put(NEW_LINE);
+    }
+
+    /**
+     * Write a SYMBOL message, e.g. "SYMBOL 40 7 1234".
+     *
+     * @param out the buffer to write to
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param symbol the symbol of the card
+     */
+    public static void putSymbol(ByteBuffer out, int row, int col, int symbol) {
+        out.put(SYMBOL).put((byte) ' ');
+        putInt(out, row);
+        out.put((byte) ' ');
+        putInt(out, col);
+        out.put((byte) ' ');
+        putInt(out, symbol);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a MATCH or MISMATCH message, e.g. "MATCH 0 1 3 2".
+     *
+     * @param out the buffer to write to
+     * @param match whether the cards matched
+     * @param row1 the row of the first card
+     * @param col1 the column of the first card
+     * @param row2 the row of the second card
+     * @param col2 the column of the second card
+     */
+    public static void putMatch(ByteBuffer out, boolean match, int row1, int col1, int row2, int col2) {
+        out.put(match ? MATCH : MISMATCH).put((byte) ' ');
+        putInt(out, row1);
+        out.put((byte) ' ');
+        putInt(out, col1);
+        out.put((byte) ' ');
+        putInt(out, row2);
+        out.put((byte) ' ');
+        putInt(out, col2);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a GAME_OVER message.
+     *
+     * @param out the buffer to write to
+     */
+    public static void putGameOver(ByteBuffer out) {
+        out.put(GAME_OVER).put(NEW_LINE);
+    }
+
+    /**
+     * Write a ROOM message, e.g. "ROOM 1 4".
+     *
+     * @param out the buffer to write to
+     * @param seat the seat of the player the message is sent to
+     * @param players the number of players in the room
+     */
+    public static void putRoom(ByteBuffer out, int seat, int players) {
+        out.put(ROOM).put((byte) ' ');
+        putInt(out, seat);
+        out.put((byte) ' ');
+        putInt(out, players);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a TURN message, e.g. "TURN 2".
+     *
+     * @param out the buffer to write to
+     * @param seat the seat of the player to reveal next
+     */
+    public static void putTurn(ByteBuffer out, int seat) {
+        out.put(TURN).put((byte) ' ');
+        putInt(out, seat);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a SCORE message, e.g. "SCORE 2 5".
+     *
+     * @param out the buffer to write to
+     * @param seat the seat of the player
+     * @param matches the pairs the player has matched
+     */
+    public static void putScore(ByteBuffer out, int seat, int matches) {
+        out.put(SCORE).put((byte) ' ');
+        putInt(out, seat);
+        out.put((byte) ' ');
+        putInt(out, matches);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a SESSION message, e.g. "SESSION 9f86d081884c7d65".
+     *
+     * @param out the buffer to write to
+     * @param token the token of the game
+     */
+    public static void putSession(ByteBuffer out, CharSequence token) {
+        out.put(SESSION).put((byte) ' ');
+        putLine(out, token);
+    }
+
+    /**
+     * Write a SNAPSHOT message, e.g. "SNAPSHOT 4 A..A...C........".
+     *
+     * @param out the buffer to write to
+     * @param dim the square dimension of the board
+     * @param cards one character per card, row by row
+     */
+    public static void putSnapshot(ByteBuffer out, int dim, CharSequence cards) {
+        out.put(SNAPSHOT).put((byte) ' ');
+        putInt(out, dim);
+        out.put((byte) ' ');
+        putLine(out, cards);
+    }
+
+    /**
+     * Write an ERROR message, e.g. "ERROR Invalid coordinate".
+     *
+     * @param out the buffer to write to
+     * @param text the error text, ASCII only
+     */
+    public static void putError(ByteBuffer out, CharSequence text) {
+        out.put(ERROR).put((byte) ' ');
+        putLine(out, text);
+    }
+
+    /**
+     * Write a REVEAL message, e.g. "REVEAL 0 2".
+     *
+     * @param out the buffer to write to
+     * @param row the row of the card
+     * @param col the column of the card
+     */
+    public static void putReveal(ByteBuffer out, int row, int col) {
+        out.put(REVEAL).put((byte) ' ');
+        putInt(out, row);
+        out.put((byte) ' ');
+        putInt(out, col);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a REVEAL_PAIR message, e.g. "REVEAL_PAIR 0 2 3 1".
+     *
+     * @param out the buffer to write to
+     * @param row1 the row of the first card
+     * @param col1 the column of the first card
+     * @param row2 the row of the second card
+     * @param col2 the column of the second card
+     */
+    public static void putRevealPair(ByteBuffer out, int row1, int col1, int row2, int col2) {
+        out.put(REVEAL_PAIR).put((byte) ' ');
+        putInt(out, row1);
+        out.put((byte) ' ');
+        putInt(out, col1);
+        out.put((byte) ' ');
+        putInt(out, row2);
+        out.put((byte) ' ');
+        putInt(out, col2);
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a RESUME message, e.g. "RESUME 9f86d081884c7d65".
+     *
+     * @param out the buffer to write to
+     * @param token the token from SESSION
+     */
+    public static void putResume(ByteBuffer out, CharSequence token) {
+        out.put(RESUME).put((byte) ' ');
+        putLine(out, token);
+    }
+
+    /**
+     * Write a line of ASCII text, such as the binary handshake.
+     *
+     * @param out the buffer to write to
+     * @param text the text
+     */
+    public static void putLine(ByteBuffer out, CharSequence text) {
+        for (int i = 0; i < text.length(); ++i) {
+            out.put((byte) text.charAt(i));
+        }
+        out.put(NEW_LINE);
+    }
+
+    /**
+     * Write a number in decimal, as %d would.
+     */
+    private static void putInt(ByteBuffer out, int value) {
+        long n = value;
+        if (n < 0) {
+            out.put((byte) '-');
+            n = -n;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= n) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.put((byte) ('0' + n / divisor % 10));
+        }
+    }
+
+    /*
+     * DECODER
+     */
+
+    /**
+     * Read one message line if all of it has arrived.  Requests are held to
+     * the same rules as splitting the line on single spaces: a REVEAL must
+     * have exactly two more fields and a REVEAL_PAIR four, and one whose
+     * fields are not all numbers decodes as
+     * {@link ConcentrationMessage.Type#INVALID_REVEAL}.
+     * A line that is not a protocol message decodes as
+     * {@link ConcentrationMessage.Type#UNKNOWN}.
+     *
+     * @param in the buffer to read from
+     * @param message where to put the decoded message
+     * @return true if a line was read, false if more bytes are needed
+     * @throws ConcentrationException if no line end arrives within
+     * {@link #MAX_LINE} bytes
+     */
+    public boolean decode(ByteBuffer in, ConcentrationMessage message) throws ConcentrationException {
+        int newLine = -1;
+        for (int i = in.position(); i < in.limit(); ++i) {
+            if (in.get(i) == '\n') {
+                newLine = i;
+                break;
+            }
+        }
+        if (newLine < 0) {
+            if (in.remaining() >= MAX_LINE) {
+                throw new ConcentrationException("Line too long");
+            }
+            return false;
+        }
+        this.in = in;
+        this.cursor = in.position();
+        this.end = newLine;
+        if (end > cursor && in.get(end - 1) == '\r') {
+            end--;
+        }
+        in.position(newLine + 1);
+        parse(message);
+        this.in = null;
+        return true;
+    }
+
+    private void parse(ConcentrationMessage message) {
+        valid = true;
+        int fields = fields();
+        if (keyword(REVEAL)) {
+            int row = nextInt();
+            int col = nextInt();
+            if (fields != 3) {
+                message.set(ConcentrationMessage.Type.UNKNOWN, 0, 0, 0, 0);
+            } else {
+                message.set(valid ? ConcentrationMessage.Type.REVEAL : ConcentrationMessage.Type.INVALID_REVEAL,
+                        row, col, 0, 0);
+            }
+        } else if (keyword(REVEAL_PAIR)) {
+            int row1 = nextInt();
+            int col1 = nextInt();
+            int row2 = nextInt();
+            int col2 = nextInt();
+            if (fields != 5) {
+                message.set(ConcentrationMessage.Type.UNKNOWN, 0, 0, 0, 0);
+            } else {
+                message.set(valid ? ConcentrationMessage.Type.REVEAL_PAIR
+                        : ConcentrationMessage.Type.INVALID_REVEAL, row1, col1, row2, col2);
+            }
+        } else if (keyword(CARD)) {
+            int row = nextInt();
+            int col = nextInt();
+            char letter = cursor < end ? (char) (in.get(cursor) & 0xff) : 0;
+            message.setCard(row, col, letter);
+        } else if (keyword(SYMBOL)) {
+            message.setSymbol(nextInt(), nextInt(), nextInt());
+        } else if (keyword(MATCH)) {
+            message.set(ConcentrationMessage.Type.MATCH, nextInt(), nextInt(), nextInt(), nextInt());
+        } else if (keyword(MISMATCH)) {
+            message.set(ConcentrationMessage.Type.MISMATCH, nextInt(), nextInt(), nextInt(), nextInt());
+        } else if (keyword(BOARD_DIM)) {
+            message.set(ConcentrationMessage.Type.BOARD_DIM, nextInt(), 0, 0, 0);
+        } else if (keyword(GAME_OVER)) {
+            message.set(ConcentrationMessage.Type.GAME_OVER, 0, 0, 0, 0);
+        } else if (keyword(ROOM)) {
+            message.set(ConcentrationMessage.Type.ROOM, nextInt(), nextInt(), 0, 0);
+        } else if (keyword(TURN)) {
+            message.set(ConcentrationMessage.Type.TURN, nextInt(), 0, 0, 0);
+        } else if (keyword(SCORE)) {
+            message.set(ConcentrationMessage.Type.SCORE, nextInt(), nextInt(), 0, 0);
+        } else if (keyword(SESSION) && fields == 2) {
+            message.setText(ConcentrationMessage.Type.SESSION, 0, rest());
+        } else if (keyword(RESUME) && fields == 2) {
+            message.setText(ConcentrationMessage.Type.RESUME, 0, rest());
+        } else if (keyword(SNAPSHOT) && fields == 3) {
+            int dim = nextInt();
+            message.setText(ConcentrationMessage.Type.SNAPSHOT, dim, rest());
+        } else if (keyword(ERROR)) {
+            message.setError(rest());
+        } else if (keyword(BINARY) && fields == 1) {
+            message.set(ConcentrationMessage.Type.BINARY, 0, 0, 0, 0);
+        } else {
+            message.set(ConcentrationMessage.Type.UNKNOWN, 0, 0, 0, 0);
+        }
+        if (!valid && message.getType() != ConcentrationMessage.Type.INVALID_REVEAL) {
+            message.set(ConcentrationMessage.Type.UNKNOWN, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * The rest of the line as a String.
+     */
+    private String rest() {
+        byte[] text = new byte[end - cursor];
+        in.get(cursor, text);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The number of fields String.split(" ") would find in the line:
+     * trailing empty fields are dropped, and a line of nothing but spaces
+     * has none.
+     */
+    private int fields() {
+        int last = end;
+        while (last > cursor && in.get(last - 1) == ' ') {
+            last--;
+        }
+        if (last == cursor) {
+            return end == cursor ? 1 : 0;
+        }
+        int fields = 1;
+        for (int i = cursor; i < last; ++i) {
+            if (in.get(i) == ' ') {
+                fields++;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Does the line start with the word as a whole field?  If so, move past
+     * it and its separating space.
+     */
+    private boolean keyword(byte[] word) {
+        int length = word.length;
+        if (end - cursor < length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (in.get(cursor + i) != word[i]) {
+                return false;
+            }
+        }
+        if (cursor + length < end && in.get(cursor + length) != ' ') {
+            return false;
+        }
+        cursor = Math.min(end, cursor + length + 1);
+        return true;
+    }
+
+    /**
+     * Parse the next field as Integer.parseInt would and move past it and
+     * its separating space.  Clears {@link #valid} if it is not a number.
+     */
+    private int nextInt() {
+        int start = cursor;
+        int stop = cursor;
+        while (stop < end && in.get(stop) != ' ') {
+            stop++;
+        }
+        cursor = Math.min(end, stop + 1);
+        boolean negative = false;
+        int i = start;
+        if (i < stop && (in.get(i) == '-' || in.get(i) == '+')) {
+            negative = in.get(i) == '-';
+            i++;
+        }
+        if (i == stop) {
+            valid = false;
+            return 0;
+        }
+        long value = 0;
+        for (; i < stop; ++i) {
+            byte b = in.get(i);
+            if (b < '0' || b > '9') {
+                valid = false;
+                return 0;
+            }
+            value = value * 10 + (b - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                valid = false;
+                return 0;
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            valid = false;
+            return 0;
+        }
+        return (int) value;
+    }
+}
@@ -0,0 +1,33 @@
+package common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A blocking, ordered byte stream between a client and the server.  The
+ * game code reads and writes through it instead of a socket, so the same
+ * session and player code runs over TCP or entirely in memory.
+ *
+ * Buffers handed to a transport must be heap buffers.
+ */
+public interface Transport extends Closeable {
+    /**
+     * Read at least one byte into the buffer, blocking until some arrive.
+     *
+     * @param dst where to put the bytes, from its position
+     * @return how many bytes were read, or -1 once the other end has
+     *         closed and everything it sent has been read
+     * @throws IOException if the transport failed
+     */
+    int read(ByteBuffer dst) throws IOException;
+
+    /**
+     * Write all the remaining bytes of the buffer and push them to the
+     * other end right away.
+     *
+     * @param src the bytes to write, from its position to its limit
+     * @throws IOException if the transport failed or was closed
+     */
+    void write(ByteBuffer src) throws IOException;
+}
@@ -1,138 +1,491 @@
 package controller;
 
 
+import common.BinaryCodec;
+import common.BinaryProtocol;
 import common.ConcentrationException;
+import common.ConcentrationMessage;
 import common.ConcentrationProtocol;
+import common.Log;
+import common.TextCodec;
 import model.ConcentrationModel;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 /**
  * Client Class
  */
 public class ConcentrationController {
+    /**
+     * queued after the last click, to stop the writer thread
+     */
+    private final static int[] CLOSED = new int[0];
+    /**
+     * how often to try to connect and get the board before giving up
+     */
+    private final static int CONNECT_ATTEMPTS = 6;
+    /**
+     * the wait before the second attempt; it doubles after every failure
+     */
+    private final static long INITIAL_BACKOFF_MILLIS = 250;
+    private final static long MAX_BACKOFF_MILLIS = 8000;
+    /**
+     * how long an attempt may wait for the connection, and then for the board
+     */
+    private final static int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final String hostName;
+    private final int port;
     private Socket socket = null;
     private ConcentrationModel board;
-    private PrintWriter out;
-    private BufferedReader in;
-    private int revealMsgCount;
+    /**
+     * the connection's output; replaced, and written, under {@link #sending}
+     */
+    private OutputStream out;
+    private InputStream in;
+    /**
+     * held while writing a request, so a reconnect never interleaves with one
+     */
+    private final Object sending = new Object();
+    /**
+     * the token the game can be resumed with after a lost connection, null
+     * if the server keeps no games; touched by the reader thread only
+     */
+    private String token;
+    /**
+     * the cards of the resumed game from the last handshake, null if it
+     * started a new game
+     */
+    private String snapshot;
+    /**
+     * the clicks the writer thread has not sent yet
+     */
+    private final BlockingQueue<int[]> clicks;
+    /**
+     * 1 for each card whose reveal has been sent but not answered, so that
+     * a card clicked twice is asked for once; indexed by row * dim + col,
+     * and replaced when the board is
+     */
+    private volatile AtomicIntegerArray requested;
+
+    /**
+     * ask the server for the binary protocol after BOARD_DIM?
+     */
+    private boolean binary;
+    /**
+     * are the requests sent in the binary protocol?  From the request that
+     * switches on, as the server decodes everything after it in binary;
+     * guarded by {@link #sending}
+     */
+    private boolean binaryRequests;
+    /**
+     * are the messages received in the binary protocol?  From the server's
+     * answer to the switch, as a shared room may send others before it
+     */
+    private boolean binaryMode;
+    /**
+     * the bytes received but not decoded yet
+     */
+    private ByteBuffer input;
+    /**
+     * reused for every request sent; by the writer thread once started
+     */
+    private ByteBuffer request;
+    /*
+     * the decoder and the message received last; by the reader thread once started
+     */
+    private TextCodec textCodec;
+    private ConcentrationMessage message;
 
     /**
      * Client Class
      *
      * Constructor
-     * creates client game board to show matched cards
-     * creates networking sockets
+     * nothing is connected until {@link #start}
      *
      * @param hostName
      * @param port
-     * @param board
+     * @param board the model, set up once the board dimension arrives
      */
     public ConcentrationController(String hostName, int port, ConcentrationModel board) {
+        this(hostName, port, board, false);
+    }
+
+    /**
+     * Client Class
+     *
+     * Constructor
+     * nothing is connected until {@link #start}
+     *
+     * @param hostName
+     * @param port
+     * @param board the model, set up once the board dimension arrives
+     * @param binary whether to switch to the binary protocol after the
+     *               board dimension has been received
+     */
+    public ConcentrationController(String hostName, int port, ConcentrationModel board, boolean binary) {
+        this.hostName = hostName;
+        this.port = port;
         this.board = board;
-        try {
-            this.socket = new Socket(hostName, port);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(
-                    new InputStreamReader(socket.getInputStream()));
-        } catch (Exception e) {
-            board.setStatus(ConcentrationModel.Status.ERROR);
+        this.binary = binary;
+        this.binaryMode = false;
+        this.input = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.request = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.textCodec = new TextCodec();
+        this.message = new ConcentrationMessage();
+        this.clicks = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Connect in the background and return right away; the model's status
+     * is CONNECTING meanwhile.  A connection that cannot be made, or that
+     * fails before the board dimension arrives, is tried again after a
+     * pause that doubles every time.  Once the board dimension arrives the
+     * model gets the board, and two threads take over: one sends the
+     * clicked cards, in the order they were clicked, and the other applies
+     * each message to the model as soon as it arrives.  If every attempt
+     * fails the status becomes ERROR.
+     * <p>
+     * If the server keeps games, a connection lost mid-game is made again
+     * the same way, and the game resumed where the server left it; the
+     * status is CONNECTING meanwhile.
+     */
+    public void start() {
+        board.setStatus(ConcentrationModel.Status.CONNECTING);
+        Thread reader = new Thread(this::readMessages, "concentration-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connect and get the board dimension, trying again with a growing
+     * pause if that fails.
+     *
+     * @return the board dimension
+     * @throws IOException if the last attempt failed
+     * @throws ConcentrationException if the server sent something else
+     * @throws InterruptedException if interrupted while pausing
+     */
+    private int connect() throws IOException, ConcentrationException, InterruptedException {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                return handshake();
+            } catch (IOException e) {
+                closeSocket();
+                if (attempt == CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                Log.info("Cannot connect to %s:%d (%s), trying again in %d ms", hostName, port, e.getMessage(),
+                        backoff);
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
         }
-        this.revealMsgCount = 0;
     }
 
     /**
-     * Getter for game board dimensions
+     * One attempt: connect and read the board dimension.  With a token,
+     * also asks for the game kept under it and waits for the answer: the
+     * board of that game is then left in {@link #snapshot}, or, if the
+     * server no longer has it, the new game is played.  Also asks the
+     * server for the binary protocol if that was wanted; the answer is read
+     * with the other messages.
      */
-    public int getBoardDimension() {
-        try {
-            String board_msg = in.readLine();
-            String[] tokens = board_msg.split(" ");
-            if (!tokens[0].equals("BOARD_DIM")) {
-                throw new ConcentrationException("Incorrect message " + board_msg);
+    private int handshake() throws IOException, ConcentrationException {
+        // nothing of a failed attempt is kept
+        input.clear();
+        textCodec = new TextCodec();
+        binaryMode = false;
+        snapshot = null;
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(hostName, port), CONNECT_TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+        synchronized (sending) {
+            out = socket.getOutputStream();
+            binaryRequests = false;
+        }
+        in = socket.getInputStream();
+        readMessage();
+        if (message.getType() != ConcentrationMessage.Type.BOARD_DIM) {
+            throw new ConcentrationException("Incorrect message " + message.getType());
+        }
+        int dim = message.getRow1();
+        if (token != null) {
+            dim = resume(dim);
+        }
+        socket.setSoTimeout(0);
+        synchronized (sending) {
+            if (binary) {
+                request.clear();
+                TextCodec.putLine(request, BinaryProtocol.BINARY);
+                out.write(request.array(), 0, request.position());
+                binaryRequests = true;
+            }
+        }
+        return dim;
+    }
+
+    /**
+     * Ask for the game kept under the token, and read up to the answer.
+     *
+     * @param dim the dimension of the new game
+     * @return the dimension of the game to play
+     */
+    private int resume(int dim) throws IOException, ConcentrationException {
+        String kept = token;
+        token = null;
+        synchronized (sending) {
+            request.clear();
+            TextCodec.putResume(request, kept);
+            out.write(request.array(), 0, request.position());
+        }
+        while (true) {
+            readMessage();
+            switch (message.getType()) {
+                case SESSION:
+                    // the token of the new game, should the resume fail
+                    token = message.getText();
+                    break;
+                case SNAPSHOT:
+                    token = kept;
+                    snapshot = message.getText();
+                    Log.info("Resumed session %s", kept);
+                    return message.getRow1();
+                case ERROR:
+                    Log.info("Cannot resume session %s (%s), starting a new game", kept, message.getText());
+                    return dim;
+                default:
+                    throw new ConcentrationException("Incorrect message " + message.getType());
             }
-            return Integer.parseInt(tokens[1]);
-        } catch (Exception e) {
-            System.out.println("Cannot get board dim, exit...");
-            System.exit(1);
         }
-        return -1;
     }
 
     /**
-     * Creates controller thread
-     * The thread will reveal a card
+     * Reveal a card.  Called by the GUI; the request is only queued, so
+     * the caller never waits for the network.
      *
      * @param row coordinate of card
      * @param col coordinate of card
      */
-    public void createClientThread(int row, int col) {
-        new ConcentrationControllerThread(this, row, col).start();
+    public void reveal(int row, int col) {
+        clicks.add(new int[]{row, col});
     }
 
     /**
-     * Client thread run method
+     * The writer thread: send a reveal for every click on a hidden card
+     * that has not been asked for already.  Without waiting for the
+     * answers; the server answers the reveals in order.
      */
-    protected synchronized void clientThreadRun(int row, int col) {
-        if (!this.board.isValid(row, col) ||
-                this.board.getStatus() == ConcentrationModel.Status.GAME_OVER) {
-            return;
+    private void sendClicks() {
+        try {
+            while (true) {
+                int[] click = clicks.take();
+                if (click == CLOSED) {
+                    return;
+                }
+                int row = click[0];
+                int col = click[1];
+                if (row < 0 || row >= board.getDim() || col < 0 || col >= board.getDim()) {
+                    continue;
+                }
+                // claimed before the card is checked: the reader reveals a
+                // card before it releases it, so a released card is seen revealed
+                AtomicIntegerArray requested = this.requested;
+                int card = row * board.getDim() + col;
+                if (card >= requested.length() || !requested.compareAndSet(card, 0, 1)) {
+                    continue;
+                }
+                ConcentrationModel.Status status = board.getStatus();
+                if (!board.isValid(row, col) || status == ConcentrationModel.Status.GAME_OVER
+                        || status == ConcentrationModel.Status.CONNECTING) {
+                    requested.set(card, 0);
+                    continue;
+                }
+                try {
+                    sendReveal(row, col);
+                } catch (IOException e) {
+                    // the reader finds the connection lost, and makes it again or gives up
+                    requested.set(card, 0);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        out.println(String.format(ConcentrationProtocol.REVEAL_MSG, row, col));
-        String response = "";
+    }
+
+    /**
+     * The reader thread: connect, set up the model's board and start the
+     * writer thread, then apply every message from the server to the model
+     * until the game is over or the connection fails for good.  In a shared
+     * room this includes the cards the other players reveal.
+     */
+    private void readMessages() {
         try {
-            response = in.readLine();
-        } catch (IOException e) {
+            int dim = connect();
+            this.requested = new AtomicIntegerArray(dim * dim);
+            board.initBoard(dim);
+            board.setStatus(ConcentrationModel.Status.OK);
+            Thread writer = new Thread(this::sendClicks, "concentration-client-writer");
+            writer.setDaemon(true);
+            writer.start();
+            while (true) {
+                try {
+                    play();
+                    return;
+                } catch (IOException e) {
+                    if (token == null) {
+                        throw e;
+                    }
+                    Log.info("Connection lost (%s), resuming session %s", e.getMessage(), token);
+                    board.setStatus(ConcentrationModel.Status.CONNECTING);
+                    closeSocket();
+                    reconnected(connect());
+                }
+            }
+        } catch (IOException | ConcentrationException e) {
+            board.setStatus(ConcentrationModel.Status.ERROR);
+        } catch (InterruptedException e) {
             board.setStatus(ConcentrationModel.Status.ERROR);
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Set up the model's board again after a reconnect: as the server kept
+     * it, or a new one if the game could not be resumed.  The reveals in
+     * flight were lost with the connection, so every card may be clicked
+     * again.
+     */
+    private void reconnected(int dim) throws ConcentrationException {
+        this.requested = new AtomicIntegerArray(dim * dim);
+        if (snapshot == null) {
+            board.initBoard(dim);
+        } else if (snapshot.length() != dim * dim) {
+            throw new ConcentrationException("Incorrect snapshot " + snapshot);
+        } else {
+            int[] symbols = new int[dim * dim];
+            for (int i = 0; i < symbols.length; ++i) {
+                char card = snapshot.charAt(i);
+                symbols[i] = card == ConcentrationProtocol.SNAPSHOT_HIDDEN
+                        ? ConcentrationModel.HIDDEN_SYMBOL : ConcentrationProtocol.SNAPSHOT_SYMBOLS.indexOf(card);
+            }
+            board.restore(dim, symbols);
         }
+        board.setStatus(ConcentrationModel.Status.OK);
+    }
 
-        String[] tokens = response.split(" ");
-        if (tokens[0].equals(ConcentrationProtocol.CARD)) {
-            board.revealCard(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]), tokens[3].charAt(0));
-            revealMsgCount++;
-        } else if (tokens[0].equals(ConcentrationProtocol.ERROR)) {
-            board.setStatus(ConcentrationModel.Status.ERROR);
+    /**
+     * Apply every message from the server to the model until the game is
+     * over.
+     *
+     * @throws IOException if the connection fails or closes
+     * @throws ConcentrationException if a message is malformed
+     */
+    private void play() throws IOException, ConcentrationException {
+        while (true) {
+            readMessage();
+            switch (message.getType()) {
+                case CARD:
+                    board.revealCard(message.getRow1(), message.getCol1(), message.getSymbol());
+                    requested.set(message.getRow1() * board.getDim() + message.getCol1(), 0);
+                    break;
+                case MATCH:
+                    board.setMatch(message.getRow1(), message.getCol1(), message.getRow2(), message.getCol2());
+                    break;
+                case MISMATCH:
+                    board.setMismatch(message.getRow1(), message.getCol1(), message.getRow2(),
+                            message.getCol2());
+                    break;
+                case BINARY:
+                    binaryMode = true;
+                    break;
+                case SESSION:
+                    token = message.getText();
+                    break;
+                case GAME_OVER:
+                    board.setStatus(ConcentrationModel.Status.GAME_OVER);
+                    return;
+                case ERROR:
+                    // the refused reveal is not known, so any card may be clicked again
+                    for (int i = 0; i < requested.length(); ++i) {
+                        requested.set(i, 0);
+                    }
+                    board.setStatus(ConcentrationModel.Status.ERROR);
+                    break;
+                default:
+                    // the seats, turns and scores of a shared room are not shown
+                    break;
+            }
         }
+    }
+
+    /**
+     * Stop the writer thread and close the connection.
+     */
+    private void close() {
+        clicks.add(CLOSED);
+        closeSocket();
+    }
 
+    private void closeSocket() {
         try {
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-            board.setStatus(ConcentrationModel.Status.ERROR);
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            // closing anyway
         }
+    }
 
-        if (revealMsgCount % 2 == 0) {
-            try {
-                response = in.readLine();
-            } catch (IOException e) {
-                board.setStatus(ConcentrationModel.Status.ERROR);
-            }
-            tokens = response.split(" ");
-            if (tokens[0].equals(ConcentrationProtocol.MATCH)) {
-                board.setMatch(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+    /**
+     * Send a reveal request in the protocol the connection speaks.
+     *
+     * @param row coordinate of card
+     * @param col coordinate of card
+     * @throws IOException if the request cannot be written
+     */
+    private void sendReveal(int row, int col) throws IOException {
+        synchronized (sending) {
+            request.clear();
+            if (binaryRequests) {
+                BinaryCodec.putReveal(request, row, col);
             } else {
-                board.setMismatch(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+                TextCodec.putReveal(request, row, col);
             }
+            out.write(request.array(), 0, request.position());
         }
+    }
 
-        if (board.shouldEnd()) {
-            try {
-                response = in.readLine();
-                if (response.equals(ConcentrationProtocol.GAME_OVER)) {
-                    board.setStatus(ConcentrationModel.Status.GAME_OVER);
-                    if (out != null) out.close();
-                    if (in != null) in.close();
-                    if (socket != null) socket.close();
-                } else {
-                    board.setStatus(ConcentrationModel.Status.ERROR);
-                }
-            } catch (IOException e) {
-                board.setStatus(ConcentrationModel.Status.ERROR);
+    /**
+     * Read the next server message into {@link #message}.
+     *
+     * @throws IOException if the connection fails or closes
+     * @throws ConcentrationException if the message is malformed
+     */
+    private void readMessage() throws IOException, ConcentrationException {
+        while (true) {
+            input.flip();
+            boolean complete = binaryMode ? BinaryCodec.decode(input, message) : textCodec.decode(input, message);
+            input.compact();
+            if (complete) {
+                return;
+            }
+            int count = in.read(input.array(), input.position(), input.remaining());
+            if (count < 0) {
+                throw new IOException("Connection closed");
             }
+            input.position(input.position() + count);
         }
     }
 }
@@ -0,0 +1,223 @@
+package game;
+
+import common.ConcentrationException;
+
+import java.util.SplittableRandom;
+
+/**
+ * A game board kept in primitive arrays.  The symbols are kept by the
+ * subclass, one per card in row major order, and the revealed cards are
+ * bits in an array of longs, so a board is two arrays instead of a grid of
+ * card objects.  A reveal allocates nothing, and the game is over when the
+ * match count reaches the number of pairs.
+ */
+public abstract class ArrayConcentrationBoard implements GameBoard {
+    /**
+     * the smallest board is 2x2
+     */
+    private final static int MIN_DIM = 2;
+
+    /**
+     * the square dimension of the board
+     */
+    private final int DIM;
+    /**
+     * a set bit for each revealed card
+     */
+    private final long[] revealed;
+    /**
+     * the seed the board was dealt from
+     */
+    private final long seed;
+    /**
+     * the number of pairs on the board
+     */
+    private final int pairs;
+    /**
+     * the index of the first card of a pair while it is revealed, otherwise -1
+     */
+    private int first;
+    /**
+     * the index of the first card of the last pair
+     */
+    private int lastFirst;
+    /**
+     * the number of card matches that have been made so far
+     */
+    private int matches;
+
+    /**
+     * Create a board with every card hidden; the subclass stores the
+     * symbols and then calls {@link #deal()}.
+     *
+     * @param DIM square dimension
+     * @param seed the seed of the shuffle
+     * @param maxDim the largest dimension the subclass can store
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    protected ArrayConcentrationBoard(int DIM, long seed, int maxDim) throws ConcentrationException {
+        if (DIM < MIN_DIM || DIM > maxDim) {
+            throw new ConcentrationException("Board size out of range: " + DIM);
+        } else if (DIM % 2 != 0) {
+            throw new ConcentrationException("Board size not even: " + DIM);
+        }
+        int cards = DIM * DIM;
+        this.DIM = DIM;
+        this.revealed = new long[(cards + 63) >>> 6];
+        this.pairs = cards / 2;
+        this.seed = seed;
+        this.first = -1;
+        this.lastFirst = 0;
+        this.matches = 0;
+    }
+
+    /**
+     * Get the symbol of a card.
+     *
+     * @param card the index of the card, row * DIM + col
+     * @return its symbol
+     */
+    protected abstract int symbol(int card);
+
+    /**
+     * Set the symbol of a card.
+     *
+     * @param card the index of the card, row * DIM + col
+     * @param symbol its symbol
+     */
+    protected abstract void setSymbol(int card, int symbol);
+
+    /**
+     * Lay the symbols out in pairs and shuffle them in place, so the same
+     * seed always deals the same board.
+     */
+    protected final void deal() {
+        int cards = DIM * DIM;
+        for (int i = 0; i < cards; ++i) {
+            setSymbol(i, i >>> 1);
+        }
+        // Fisher-Yates in place
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = cards - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int symbol = symbol(i);
+            setSymbol(i, symbol(j));
+            setSymbol(j, symbol);
+        }
+    }
+
+    @Override
+    public int getDIM() {
+        return this.DIM;
+    }
+
+    @Override
+    public int getSymbol(int row, int col) throws ConcentrationException {
+        return symbol(index(row, col));
+    }
+
+    @Override
+    public boolean isRevealed(int row, int col) throws ConcentrationException {
+        return isRevealed(index(row, col));
+    }
+
+    @Override
+    public int revealCard(int row, int col) throws ConcentrationException {
+        if (gameOver()) throw new ConcentrationException("Game already over");
+        int card = index(row, col);
+        if (isRevealed(card)) {
+            throw new ConcentrationException("Card is revealed");
+        }
+        if (this.first < 0) {
+            this.first = card;
+            setRevealed(card);
+            return FIRST;
+        }
+        int card1 = this.first;
+        this.first = -1;
+        this.lastFirst = card1;
+        if (symbol(card1) == symbol(card)) {
+            setRevealed(card);
+            this.matches++;
+            return MATCH;
+        }
+        clearRevealed(card1);
+        return MISMATCH;
+    }
+
+    @Override
+    public int getFirstRow() {
+        return this.lastFirst / DIM;
+    }
+
+    @Override
+    public int getFirstCol() {
+        return this.lastFirst % DIM;
+    }
+
+    @Override
+    public int getMatches() {
+        return this.matches;
+    }
+
+    @Override
+    public long getSeed() {
+        return this.seed;
+    }
+
+    @Override
+    public boolean gameOver() {
+        return this.matches == this.pairs;
+    }
+
+    private int index(int row, int col) throws ConcentrationException {
+        if (row < 0 || row >= DIM || col < 0 || col >= DIM) {
+            throw new ConcentrationException("Invalid coordinate");
+        }
+        return row * DIM + col;
+    }
+
+    private boolean isRevealed(int card) {
+        return (revealed[card >>> 6] & (1L << card)) != 0;
+    }
+
+    private void setRevealed(int card) {
+        revealed[card >>> 6] |= 1L << card;
+    }
+
+    private void clearRevealed(int card) {
+        revealed[card >>> 6] &= ~(1L << card);
+    }
+
+    /**
+     * Returns a string representation of the board in the same form as
+     * {@link ConcentrationBoard#toString()}.  Symbols past Z are shown
+     * as '*'.
+     *
+     * @return the board as a string
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append("  ");
+        for (int col = 0; col < this.DIM; ++col) {
+            str.append(col);
+        }
+        str.append("\n");
+        for (int row = 0; row < this.DIM; ++row) {
+            str.append(row).append("|");
+            for (int col = 0; col < this.DIM; ++col) {
+                int card = row * DIM + col;
+                if (!isRevealed(card)) {
+                    str.append(ConcentrationCard.HIDDEN);
+                } else if (symbol(card) < 26) {
+                    str.append((char) ('A' + symbol(card)));
+                } else {
+                    str.append('*');
+                }
+            }
+            str.append("\n");
+        }
+        return str.toString();
+    }
+}
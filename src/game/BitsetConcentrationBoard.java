@@ -0,0 +1,54 @@
+package game;
+
+import common.ConcentrationException;
+
+import java.util.SplittableRandom;
+
+/**
+ * An {@link ArrayConcentrationBoard} of up to 6x6 cards, with a byte per
+ * symbol, so the whole board fits in two small arrays.
+ */
+public final class BitsetConcentrationBoard extends ArrayConcentrationBoard {
+    /**
+     * the largest board is 6x6
+     */
+    private final static int MAX_DIM = 6;
+
+    /**
+     * the symbol of each card, index row * DIM + col
+     */
+    private final byte[] symbols;
+
+    /**
+     * Create a randomly shuffled board.
+     *
+     * @param DIM square dimension
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public BitsetConcentrationBoard(int DIM) throws ConcentrationException {
+        this(DIM, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a board dealt from a seed.
+     *
+     * @param DIM square dimension
+     * @param seed the seed of the shuffle
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public BitsetConcentrationBoard(int DIM, long seed) throws ConcentrationException {
+        super(DIM, seed, MAX_DIM);
+        this.symbols = new byte[DIM * DIM];
+        deal();
+    }
+
+    @Override
+    protected int symbol(int card) {
+        return symbols[card];
+    }
+
+    @Override
+    protected void setSymbol(int card, int symbol) {
+        symbols[card] = (byte) symbol;
+    }
+}
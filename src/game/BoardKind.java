@@ -0,0 +1,47 @@
+package game;
+
+import common.ConcentrationException;
+
+import java.util.SplittableRandom;
+
+/**
+ * The board implementations the server can play on.
+ */
+public enum BoardKind {
+    /** {@link ConcentrationBoard}, a grid of card objects */
+    OBJECT,
+    /** {@link BitsetConcentrationBoard}, primitive arrays and bitmasks */
+    BITSET,
+    /** {@link LargeConcentrationBoard}, int symbols for boards up to 1024x1024 */
+    LARGE;
+
+    /**
+     * Create a randomly shuffled board of this kind.
+     *
+     * @param DIM square dimension
+     * @return the board
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public GameBoard create(int DIM) throws ConcentrationException {
+        return create(DIM, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a board of this kind dealt from a seed.
+     *
+     * @param DIM square dimension
+     * @param seed the seed of the shuffle
+     * @return the board
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public GameBoard create(int DIM, long seed) throws ConcentrationException {
+        switch (this) {
+            case BITSET:
+                return new BitsetConcentrationBoard(DIM, seed);
+            case LARGE:
+                return new LargeConcentrationBoard(DIM, seed);
+            default:
+                return new ConcentrationBoard(DIM, false, seed);
+        }
+    }
+}
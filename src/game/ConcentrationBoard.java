@@ -6,11 +6,12 @@ import game.ConcentrationCard;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * Represents the game board for the concentration game.
  */
-public class ConcentrationBoard {
+public class ConcentrationBoard implements GameBoard {
     /**
      * the smallest board is 2x2
      */
@@ -32,10 +33,18 @@ public class ConcentrationBoard {
      * if the first card is revealed this is set (otherwise null)
      */
     private ConcentrationCard revealedCard;
+    /**
+     * the first card of the last pair that was compared
+     */
+    private ConcentrationCard lastFirstCard;
     /**
      * the number of card matches that have been made so far
      */
     private int matches;
+    /**
+     * the seed the board was dealt from
+     */
+    private long seed;
 
     /**
      * An internal class used to determine a card match or mismatch.
@@ -115,13 +124,25 @@ public class ConcentrationBoard {
     }
 
     /**
-     * Create the board.
+     * Create the board with a random deal.
      *
      * @param DIM   square dimension
      * @param cheat whether to display the fully revealed board or not
      * @throws ConcentrationException if the dimensions are invalid
      */
     public ConcentrationBoard(int DIM, boolean cheat) throws ConcentrationException {
+        this(DIM, cheat, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create the board dealt from a seed.
+     *
+     * @param DIM   square dimension
+     * @param cheat whether to display the fully revealed board or not
+     * @param seed  the seed of the shuffle
+     * @throws ConcentrationException if the dimensions are invalid
+     */
+    public ConcentrationBoard(int DIM, boolean cheat, long seed) throws ConcentrationException {
         // check for bad dimensions
         if (DIM < MIN_DIM || DIM > MAX_DIM) {
             throw new ConcentrationException("Board size out of range: " + DIM);
@@ -135,16 +156,17 @@ public class ConcentrationBoard {
             chars.add((char) (i + 'A'));
             chars.add((char) (i + 'A'));
         }
-        Collections.shuffle(chars);
+        Collections.shuffle(chars, new SplittableRandom(seed));
 
         /**
          * Create the grid of cards and populate from the shuffled list.
          */
         this.DIM = DIM;
+        this.seed = seed;
         this.board = new ConcentrationCard[DIM][DIM];
         for (int row = 0; row < DIM; ++row) {
             for (int col = 0; col < DIM; ++col) {
-                this.board[row][col] = new ConcentrationCard(row, col, chars.remove(0));
+                this.board[row][col] = new ConcentrationCard(row, col, chars.get(row * DIM + col));
             }
         }
 
@@ -163,6 +185,7 @@ public class ConcentrationBoard {
 
         // initialize rest of state
         this.revealedCard = null;
+        this.lastFirstCard = this.board[0][0];
         this.matches = 0;
     }
 
@@ -171,6 +194,7 @@ public class ConcentrationBoard {
      *
      * @return square dimension
      */
+    @Override
     public int getDIM() {
         return this.DIM;
     }
@@ -191,6 +215,40 @@ public class ConcentrationBoard {
         return board[row][col];
     }
 
+    @Override
+    public int getSymbol(int row, int col) throws ConcentrationException {
+        return getCard(row, col).getLetter() - 'A';
+    }
+
+    @Override
+    public boolean isRevealed(int row, int col) throws ConcentrationException {
+        return !getCard(row, col).isHidden();
+    }
+
+    @Override
+    public int revealCard(int row, int col) throws ConcentrationException {
+        CardMatch cardMatch = reveal(row, col);
+        if (!cardMatch.isReady()) {
+            return FIRST;
+        }
+        return cardMatch.isMatch() ? MATCH : MISMATCH;
+    }
+
+    @Override
+    public int getFirstRow() {
+        return this.lastFirstCard.getRow();
+    }
+
+    @Override
+    public int getFirstCol() {
+        return this.lastFirstCard.getCol();
+    }
+
+    @Override
+    public int getMatches() {
+        return this.matches;
+    }
+
     /**
      * Reveal a hidden card.
      *
@@ -221,29 +279,34 @@ public class ConcentrationBoard {
             if(match){
                 card1.reveal();
                 card2.reveal();
+                this.matches++;
             } else {
                 card1.hide();
             }
             this.revealedCard = null;
+            this.lastFirstCard = card1;
             return new CardMatch(card1, card2, match);
         }
     }
 
+    /**
+     * Get the seed the board was shuffled from
+     *
+     * @return the seed
+     */
+    @Override
+    public long getSeed() {
+        return this.seed;
+    }
+
     /**
      * The game is over when all the matches have been made.
      *
      * @return whether the game is over or not
      */
+    @Override
     public boolean gameOver() {
-        //TODO YOUR CODE HERE
-        for (int row = 0; row < DIM; ++row) {
-            for (int col = 0; col < DIM; ++col) {
-                if (this.board[row][col].isHidden()) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return this.matches == (DIM * DIM) / 2;
     }
 
     /**
@@ -0,0 +1,94 @@
+package game;
+
+import common.ConcentrationException;
+
+/**
+ * What the server needs from a game board.  A reveal reports its outcome
+ * as one of the constants below instead of returning an object, so an
+ * implementation can play a whole game without allocating.
+ */
+public interface GameBoard {
+    /** the revealed card is the first of a pair */
+    int FIRST = 0;
+    /** the revealed card matches the first card of the pair */
+    int MATCH = 1;
+    /** the revealed card does not match the first card, which is hidden again */
+    int MISMATCH = 2;
+
+    /**
+     * Get the square dimension of the board
+     *
+     * @return square dimension
+     */
+    int getDIM();
+
+    /**
+     * Get the symbol of a card, whether it is hidden or not.  The two cards
+     * of a pair share a symbol, numbered from 0; symbol 0 is the letter A.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the symbol
+     * @throws ConcentrationException if the coordinate is invalid
+     */
+    int getSymbol(int row, int col) throws ConcentrationException;
+
+    /**
+     * Is a card face up: matched, or the first card of the pair being
+     * turned over?
+     *
+     * @param row the row
+     * @param col the column
+     * @return whether the card is revealed
+     * @throws ConcentrationException if the coordinate is invalid
+     */
+    boolean isRevealed(int row, int col) throws ConcentrationException;
+
+    /**
+     * Reveal a hidden card.
+     *
+     * @param row the row
+     * @param col the column
+     * @return {@link #FIRST}, {@link #MATCH} or {@link #MISMATCH}
+     * @throws ConcentrationException if the game is over, the coordinate is invalid, or the
+     *                                card has already been revealed.
+     */
+    int revealCard(int row, int col) throws ConcentrationException;
+
+    /**
+     * Get the row of the first card of the last pair, the card a
+     * {@link #MATCH} or {@link #MISMATCH} was compared with.
+     *
+     * @return the row
+     */
+    int getFirstRow();
+
+    /**
+     * Get the column of the first card of the last pair.
+     *
+     * @return the column
+     */
+    int getFirstCol();
+
+    /**
+     * Get the number of matches made so far.
+     *
+     * @return the number of matches
+     */
+    int getMatches();
+
+    /**
+     * Get the seed the board was dealt from.  The same kind of board
+     * created with the same dimension and seed has the same deal.
+     *
+     * @return the seed
+     */
+    long getSeed();
+
+    /**
+     * The game is over when all the matches have been made.
+     *
+     * @return whether the game is over or not
+     */
+    boolean gameOver();
+}
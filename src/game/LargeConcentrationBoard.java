@@ -0,0 +1,56 @@
+package game;
+
+import common.ConcentrationException;
+
+import java.util.SplittableRandom;
+
+/**
+ * A board for endurance and tournament games of up to 1024x1024 cards.
+ * The cards carry int symbols instead of letters, there being far more
+ * pairs than letters; otherwise it is played like any other
+ * {@link ArrayConcentrationBoard}.
+ */
+public final class LargeConcentrationBoard extends ArrayConcentrationBoard {
+    /**
+     * the largest board is 1024x1024
+     */
+    public final static int MAX_DIM = 1024;
+
+    /**
+     * the symbol of each card, index row * DIM + col
+     */
+    private final int[] symbols;
+
+    /**
+     * Create a board with a random deal.
+     *
+     * @param DIM square dimension
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public LargeConcentrationBoard(int DIM) throws ConcentrationException {
+        this(DIM, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a board dealt from a seed.
+     *
+     * @param DIM square dimension
+     * @param seed the seed of the shuffle
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public LargeConcentrationBoard(int DIM, long seed) throws ConcentrationException {
+        super(DIM, seed, MAX_DIM);
+        this.symbols = new int[DIM * DIM];
+        deal();
+    }
+
+    @Override
+    protected int symbol(int card) {
+        return symbols[card];
+    }
+
+    @Override
+    protected void setSymbol(int card, int symbol) {
+        symbols[card] = symbol;
+    }
+}
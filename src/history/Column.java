@@ -0,0 +1,49 @@
+package history;
+
+/**
+ * The columns of the game history, each stored apart from the others in
+ * every row group so that a query reads only the columns it needs.  Every
+ * column has one value per game, but {@link #TURN_MICROS}, which has one
+ * per turn: the turns of each game, in order, as many as its
+ * {@link #TURNS}.
+ */
+public enum Column {
+    /** the seed the board was dealt from, also the id of the game */
+    SEED(Encoding.FIXED),
+    /** the dimension of the board */
+    DIM(Encoding.VARINT),
+    /** when the game started, in milliseconds since the epoch */
+    STARTED_MILLIS(Encoding.DELTA),
+    /** how long the game took, in milliseconds */
+    DURATION_MILLIS(Encoding.VARINT),
+    /** the cards revealed */
+    MOVES(Encoding.VARINT),
+    /** the turns that ended in a mismatch */
+    MISMATCHES(Encoding.VARINT),
+    /** the turns played */
+    TURNS(Encoding.VARINT),
+    /** how long each turn took, in microseconds */
+    TURN_MICROS(Encoding.VARINT);
+
+    /**
+     * How the values of a column are laid out before they are compressed.
+     */
+    enum Encoding {
+        /** eight bytes each, for values with no pattern */
+        FIXED,
+        /** zigzag varints, for small values */
+        VARINT,
+        /** zigzag varints of the differences to the previous value, for values that grow slowly */
+        DELTA
+    }
+
+    private final Encoding encoding;
+
+    Column(Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    Encoding getEncoding() {
+        return encoding;
+    }
+}
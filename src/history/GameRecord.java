@@ -0,0 +1,70 @@
+package history;
+
+/**
+ * One completed game, a row of the game history: the board it was played
+ * on, when and for how long, and how it went turn by turn.
+ */
+public class GameRecord {
+    private final long seed;
+    private final int dim;
+    private final long startedMillis;
+    private final long durationMillis;
+    private final int moves;
+    private final int mismatches;
+    private final int[] turnMicros;
+
+    /**
+     * Create a record.
+     *
+     * @param seed the seed the board was dealt from, which is also the id of the game
+     * @param dim the dimension of the board
+     * @param startedMillis when the game started, in milliseconds since the epoch
+     * @param durationMillis how long the game took
+     * @param moves the cards revealed
+     * @param mismatches the turns that ended in a mismatch
+     * @param turnMicros how long each turn took, in microseconds, from the
+     *                   end of the previous turn to the second card
+     */
+    public GameRecord(long seed, int dim, long startedMillis, long durationMillis, int moves, int mismatches,
+                      int[] turnMicros) {
+        this.seed = seed;
+        this.dim = dim;
+        this.startedMillis = startedMillis;
+        this.durationMillis = durationMillis;
+        this.moves = moves;
+        this.mismatches = mismatches;
+        this.turnMicros = turnMicros;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getDim() {
+        return dim;
+    }
+
+    public long getStartedMillis() {
+        return startedMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public int getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * @return the time of each turn in microseconds, in the order played;
+     *         not to be modified
+     */
+    public int[] getTurnMicros() {
+        return turnMicros;
+    }
+}
@@ -0,0 +1,177 @@
+package history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A history file written by {@link HistoryWriter}, mapped into memory.
+ * Opening it only walks the lengths of its row groups; each group is
+ * decoded on its own, and only the columns asked for, so different
+ * threads can read different groups at once.  A group cut short by a
+ * crash, and anything after it, is left out.
+ */
+class HistoryFile {
+    /**
+     * One row group: the same games in every column.
+     */
+    static class RowGroup {
+        private final ByteBuffer data;
+        private final int rows;
+
+        private RowGroup(ByteBuffer data) {
+            this.data = data;
+            this.rows = data.getInt(0);
+        }
+
+        /**
+         * Get the number of games in the group.
+         *
+         * @return the games
+         */
+        int getRows() {
+            return rows;
+        }
+
+        /**
+         * Decompress and decode one column.
+         *
+         * @param column the column
+         * @return its values, one per game, or one per turn for {@link Column#TURN_MICROS}
+         * @throws IOException if the group is corrupt
+         */
+        long[] read(Column column) throws IOException {
+            int position = 5;
+            int columns = data.get(4);
+            for (int i = 0; i < columns; ++i) {
+                int ordinal = data.get(position);
+                int values = data.getInt(position + 1);
+                int rawLength = data.getInt(position + 5);
+                int compressedLength = data.getInt(position + 9);
+                position += 13;
+                if (ordinal == column.ordinal()) {
+                    return decode(column.getEncoding(), values, inflate(position, compressedLength, rawLength));
+                }
+                position += compressedLength;
+            }
+            throw new IOException("No column " + column);
+        }
+
+        private byte[] inflate(int position, int compressedLength, int rawLength) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data.slice(position, compressedLength));
+                byte[] raw = new byte[rawLength];
+                int length = inflater.inflate(raw);
+                if (length != rawLength || !inflater.finished()) {
+                    throw new IOException("Corrupt column");
+                }
+                return raw;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt column: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static long[] decode(Column.Encoding encoding, int count, byte[] raw) {
+            long[] values = new long[count];
+            int position = 0;
+            long previous = 0;
+            for (int i = 0; i < count; ++i) {
+                if (encoding == Column.Encoding.FIXED) {
+                    long value = 0;
+                    for (int b = 0; b < 8; ++b) {
+                        value = (value << 8) | (raw[position++] & 0xFF);
+                    }
+                    values[i] = value;
+                    continue;
+                }
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = raw[position++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                long value = (zigzag >>> 1) ^ -(zigzag & 1);
+                if (encoding == Column.Encoding.DELTA) {
+                    value += previous;
+                    previous = value;
+                }
+                values[i] = value;
+            }
+            return values;
+        }
+    }
+
+    private final Path path;
+    private final ByteBuffer data;
+    /**
+     * where the rows of each group start, just after its length
+     */
+    private final List<int[]> groups;
+
+    private HistoryFile(Path path, ByteBuffer data, List<int[]> groups) {
+        this.path = path;
+        this.data = data;
+        this.groups = groups;
+    }
+
+    /**
+     * Map a file and find its row groups.
+     *
+     * @param path the file
+     * @return the file
+     * @throws IOException if it cannot be read or is no history file
+     */
+    static HistoryFile open(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < 8 || data.getInt(0) != HistoryWriter.FILE_MAGIC) {
+            throw new IOException(path + " is no game history");
+        }
+        if (data.getInt(4) != HistoryWriter.VERSION) {
+            throw new IOException(path + " is of version " + data.getInt(4));
+        }
+        List<int[]> groups = new ArrayList<>();
+        int position = 8;
+        while (position + 8 <= data.limit() && data.getInt(position) == HistoryWriter.GROUP_MAGIC) {
+            int length = data.getInt(position + 4);
+            if (length < 5 || position + 8 + length > data.limit()) {
+                break;
+            }
+            groups.add(new int[]{position + 8, length});
+            position += 8 + length;
+        }
+        return new HistoryFile(path, data, groups);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getRowGroups() {
+        return groups.size();
+    }
+
+    /**
+     * Get a row group.
+     *
+     * @param index its number in the file
+     * @return the group, reading nothing yet
+     */
+    RowGroup getRowGroup(int index) {
+        int[] group = groups.get(index);
+        return new RowGroup(data.slice(group[0], group[1]));
+    }
+}
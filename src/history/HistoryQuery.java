@@ -0,0 +1,245 @@
+package history;
+
+import common.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Studies the game history offline: for each board dimension, the games
+ * played, the percentiles of their move counts, the share of the turns
+ * that ended in a mismatch and the percentiles of the time a turn took.
+ * <p>
+ * The files are scanned on a {@link ForkJoinPool}: the list of files is
+ * split in halves down to single files, each file is split into a task
+ * per row group, and each group reads only the columns it needs.  The
+ * partial results are merged on the way back up, so no two threads ever
+ * touch the same counts.
+ * <pre>
+ *     java history.HistoryQuery [--parallelism n] &lt;file or directory&gt;...
+ * </pre>
+ */
+public class HistoryQuery {
+    public final static String USAGE =
+            "Usage: java HistoryQuery [--parallelism <threads>] <file or directory>...\n" +
+            "  a directory stands for every history file in it\n";
+    private final static double[] QUANTILES = {50, 90, 99};
+
+    /**
+     * The aggregates of the games of one board dimension.
+     */
+    static class DimensionStats {
+        private long games;
+        private long turns;
+        private long mismatches;
+        private final LatencyHistogram moves = new LatencyHistogram();
+        private final LatencyHistogram turnMicros = new LatencyHistogram();
+
+        private void add(DimensionStats other) {
+            games += other.games;
+            turns += other.turns;
+            mismatches += other.mismatches;
+            moves.add(other.moves);
+            turnMicros.add(other.turnMicros);
+        }
+    }
+
+    /**
+     * What a task found: the aggregates by board dimension, and how much it
+     * read.
+     */
+    static class Result {
+        private final Map<Integer, DimensionStats> dimensions = new TreeMap<>();
+        private int files;
+        private int groups;
+        private int skipped;
+
+        private DimensionStats get(int dim) {
+            return dimensions.computeIfAbsent(dim, d -> new DimensionStats());
+        }
+
+        private Result merge(Result other) {
+            other.dimensions.forEach((dim, stats) -> get(dim).add(stats));
+            files += other.files;
+            groups += other.groups;
+            skipped += other.skipped;
+            return this;
+        }
+    }
+
+    /**
+     * Scan some files: halves of the list in parallel, down to one file.
+     */
+    private static class FilesTask extends RecursiveTask<Result> {
+        private final static long serialVersionUID = 1L;
+        private final transient List<Path> files;
+
+        private FilesTask(List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected Result compute() {
+            if (files.size() == 1) {
+                return scan(files.get(0));
+            }
+            int half = files.size() / 2;
+            FilesTask second = new FilesTask(files.subList(half, files.size()));
+            second.fork();
+            Result first = new FilesTask(files.subList(0, half)).compute();
+            return first.merge(second.join());
+        }
+
+        /**
+         * Scan the row groups of one file in parallel.
+         */
+        private static Result scan(Path path) {
+            Result result = new Result();
+            HistoryFile file;
+            try {
+                file = HistoryFile.open(path);
+            } catch (IOException e) {
+                System.err.println("Skipping " + path + ": " + e.getMessage());
+                result.skipped = 1;
+                return result;
+            }
+            List<GroupTask> groups = new ArrayList<>();
+            for (int i = 0; i < file.getRowGroups(); ++i) {
+                groups.add(new GroupTask(file, i));
+            }
+            invokeAll(groups);
+            for (GroupTask group : groups) {
+                result.merge(group.join());
+            }
+            result.files = 1;
+            return result;
+        }
+    }
+
+    /**
+     * Aggregate one row group, reading only the columns the query needs.
+     */
+    private static class GroupTask extends RecursiveTask<Result> {
+        private final static long serialVersionUID = 1L;
+        private final transient HistoryFile file;
+        private final int index;
+
+        private GroupTask(HistoryFile file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        @Override
+        protected Result compute() {
+            Result result = new Result();
+            HistoryFile.RowGroup group = file.getRowGroup(index);
+            try {
+                long[] dims = group.read(Column.DIM);
+                long[] moves = group.read(Column.MOVES);
+                long[] mismatches = group.read(Column.MISMATCHES);
+                long[] turns = group.read(Column.TURNS);
+                long[] turnMicros = group.read(Column.TURN_MICROS);
+                int turn = 0;
+                for (int game = 0; game < group.getRows(); ++game) {
+                    DimensionStats stats = result.get((int) dims[game]);
+                    ++stats.games;
+                    stats.moves.record(moves[game]);
+                    stats.mismatches += mismatches[game];
+                    stats.turns += turns[game];
+                    for (long end = turn + turns[game]; turn < end; ++turn) {
+                        stats.turnMicros.record(turnMicros[turn]);
+                    }
+                }
+            } catch (IOException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Skipping row group " + index + " of " + file.getPath() + ": " + e.getMessage());
+                return new Result();
+            }
+            result.groups = 1;
+            return result;
+        }
+    }
+
+    /**
+     * Scan the files and print the report.
+     *
+     * @param args see {@link #USAGE}
+     */
+    public static void main(String[] args) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (args[i].equals("--parallelism")) {
+                    parallelism = Integer.parseInt(args[++i]);
+                    if (parallelism < 1) {
+                        throw new IllegalArgumentException("Option out of range");
+                    }
+                } else {
+                    addFiles(Paths.get(args[i]), files);
+                }
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("No history files");
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            System.out.println("Wrong arguments");
+            System.out.println(USAGE);
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+            return;
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Result result;
+        try {
+            result = pool.invoke(new FilesTask(files));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long games = result.dimensions.values().stream().mapToLong(stats -> stats.games).sum();
+        System.out.printf("Scanned %d games in %d row groups of %d files in %.2f s on %d threads%s%n", games,
+                result.groups, result.files, seconds, parallelism,
+                result.skipped > 0 ? ", " + result.skipped + " files skipped" : "");
+        System.out.printf("%5s %10s %8s %8s %8s %10s %12s %12s %12s%n", "dim", "games", "moves50", "moves90",
+                "moves99", "mismatch%", "turn50(ms)", "turn90(ms)", "turn99(ms)");
+        result.dimensions.forEach((dim, stats) -> {
+            System.out.printf("%5d %10d", dim, stats.games);
+            for (double quantile : QUANTILES) {
+                System.out.printf(" %8d", stats.moves.getValueAtPercentile(quantile));
+            }
+            System.out.printf(" %10.1f", stats.turns == 0 ? 0.0 : 100.0 * stats.mismatches / stats.turns);
+            for (double quantile : QUANTILES) {
+                System.out.printf(" %12.3f", stats.turnMicros.getValueAtPercentile(quantile) / 1000.0);
+            }
+            System.out.println();
+        });
+    }
+
+    /**
+     * Add a file, or every history file in a directory.
+     */
+    private static void addFiles(Path path, List<Path> files) throws IOException {
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return;
+        }
+        try (Stream<Path> listing = Files.list(path)) {
+            listing.filter(file -> file.getFileName().toString().endsWith(HistoryWriter.SUFFIX))
+                    .sorted()
+                    .forEach(files::add);
+        }
+    }
+}
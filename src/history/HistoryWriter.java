@@ -0,0 +1,310 @@
+package history;
+
+import common.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the completed games to disk in columns.  The games are gathered
+ * in row groups of up to {@link #ROW_GROUP_ROWS}; each column of a group
+ * is laid out by its {@link Column.Encoding} and compressed with deflate,
+ * so a column of small, similar numbers takes a few bits a game.  A group
+ * is written once it is full, or once a minute if games have completed
+ * since, and a new file is started every {@link #FILE_GROUPS} groups.
+ * <p>
+ * A file is a header, then the groups one after the other, each with its
+ * length in front, so a file cut short by a crash can be read up to its
+ * last whole group:
+ * <pre>
+ *     file:   int FILE_MAGIC, int VERSION, group*
+ *     group:  int GROUP_MAGIC, int length, int rows, byte columns, column*
+ *     column: byte ordinal, int values, int raw length, int compressed length, compressed bytes
+ * </pre>
+ * Adding a game only takes a lock to add it to a list; the columns are
+ * encoded, compressed and written on a thread of their own.
+ */
+public class HistoryWriter {
+    /**
+     * the ending of the names of the history files
+     */
+    public final static String SUFFIX = ".games";
+    final static int FILE_MAGIC = 0x43474831;
+    final static int VERSION = 1;
+    final static int GROUP_MAGIC = 0x47524f55;
+    /**
+     * the games in a full row group
+     */
+    final static int ROW_GROUP_ROWS = 8192;
+    /**
+     * the row groups in a full file
+     */
+    final static int FILE_GROUPS = 256;
+    private final static long FLUSH_SECONDS = 60;
+
+    private final Path directory;
+    private final long openedMillis;
+    /**
+     * encodes and writes the groups, one at a time, in order
+     */
+    private final ScheduledExecutorService writer;
+    /**
+     * the games of the group being gathered, guarded by this
+     */
+    private List<GameRecord> rows;
+
+    /*
+     * touched by the writer thread only
+     */
+    private final Deflater deflater;
+    private DataOutputStream out;
+    private int files;
+    private int groups;
+
+    /**
+     * Create a writer; nothing is written until a game completes.
+     *
+     * @param directory where to write the files, created if needed
+     * @throws IOException if the directory cannot be created
+     */
+    public HistoryWriter(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.openedMillis = System.currentTimeMillis();
+        this.writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "concentration-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rows = new ArrayList<>();
+        this.deflater = new Deflater();
+    }
+
+    /**
+     * Start writing the games that have completed once a minute, and the
+     * last ones when the server shuts down.
+     */
+    public void start() {
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "concentration-history-close"));
+        Log.info("Game history in %s", directory);
+    }
+
+    /**
+     * Add a completed game.  Called by the games' threads.
+     *
+     * @param game the game
+     */
+    public void add(GameRecord game) {
+        List<GameRecord> full = null;
+        synchronized (this) {
+            rows.add(game);
+            if (rows.size() == ROW_GROUP_ROWS) {
+                full = rows;
+                rows = new ArrayList<>();
+            }
+        }
+        if (full != null) {
+            List<GameRecord> group = full;
+            try {
+                writer.execute(() -> write(group));
+            } catch (RejectedExecutionException e) {
+                // the server is shutting down
+                Log.warn("History: %d games not written", group.size());
+            }
+        }
+    }
+
+    /**
+     * Write the games gathered so far as a group of their own.
+     */
+    private void flush() {
+        List<GameRecord> group;
+        synchronized (this) {
+            if (rows.isEmpty()) {
+                return;
+            }
+            group = rows;
+            rows = new ArrayList<>();
+        }
+        write(group);
+    }
+
+    /**
+     * Write the last games and close the file, waiting for the groups
+     * still queued.
+     */
+    private void close() {
+        writer.execute(this::flush);
+        writer.execute(() -> {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                Log.warn("History: cannot close: %s", e.getMessage());
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encode a group and append it to the file, starting a new file if
+     * this one is full.  On the writer thread.
+     */
+    private void write(List<GameRecord> group) {
+        try {
+            byte[] encoded = encode(group);
+            if (out == null || groups == FILE_GROUPS) {
+                roll();
+            }
+            out.writeInt(GROUP_MAGIC);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            out.flush();
+            ++groups;
+        } catch (IOException e) {
+            Log.warn("History: cannot write %d games: %s", group.size(), e.getMessage());
+        }
+    }
+
+    private void roll() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        Path file = directory.resolve(String.format("games-%d-%04d%s", openedMillis, ++files, SUFFIX));
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(VERSION);
+        groups = 0;
+        Log.info("History: writing %s", file);
+    }
+
+    /**
+     * Lay out a group column by column.
+     */
+    private byte[] encode(List<GameRecord> group) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream encoded = new DataOutputStream(bytes);
+        encoded.writeInt(group.size());
+        encoded.writeByte(Column.values().length);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        for (Column column : Column.values()) {
+            raw.reset();
+            int values = column == Column.TURN_MICROS ? putTurns(raw, group) : putValues(raw, column, group);
+            byte[] compressed = deflate(raw.toByteArray());
+            encoded.writeByte(column.ordinal());
+            encoded.writeInt(values);
+            encoded.writeInt(raw.size());
+            encoded.writeInt(compressed.length);
+            encoded.write(compressed);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lay out the one value of each game.
+     *
+     * @return the number of values
+     */
+    private static int putValues(ByteArrayOutputStream raw, Column column, List<GameRecord> group) {
+        long previous = 0;
+        for (GameRecord game : group) {
+            long value = value(column, game);
+            switch (column.getEncoding()) {
+                case FIXED:
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        raw.write((int) (value >>> shift));
+                    }
+                    break;
+                case DELTA:
+                    putVarint(raw, value - previous);
+                    previous = value;
+                    break;
+                default:
+                    putVarint(raw, value);
+            }
+        }
+        return group.size();
+    }
+
+    /**
+     * Lay out the turns of every game, one after the other.
+     *
+     * @return the number of turns
+     */
+    private static int putTurns(ByteArrayOutputStream raw, List<GameRecord> group) {
+        int turns = 0;
+        for (GameRecord game : group) {
+            for (int micros : game.getTurnMicros()) {
+                putVarint(raw, micros);
+            }
+            turns += game.getTurnMicros().length;
+        }
+        return turns;
+    }
+
+    private static long value(Column column, GameRecord game) {
+        switch (column) {
+            case SEED:
+                return game.getSeed();
+            case DIM:
+                return game.getDim();
+            case STARTED_MILLIS:
+                return game.getStartedMillis();
+            case DURATION_MILLIS:
+                return game.getDurationMillis();
+            case MOVES:
+                return game.getMoves();
+            case MISMATCHES:
+                return game.getMismatches();
+            case TURNS:
+                return game.getTurnMicros().length;
+            default:
+                throw new IllegalArgumentException("Not one value per game: " + column);
+        }
+    }
+
+    /**
+     * Write a zigzag varint: seven bits a byte, the small ones first, the
+     * sign in the lowest bit so that small negative values stay short.
+     */
+    private static void putVarint(ByteArrayOutputStream raw, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            raw.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        raw.write((int) zigzag);
+    }
+
+    private byte[] deflate(byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+}
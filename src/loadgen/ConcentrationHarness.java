@@ -0,0 +1,163 @@
+package loadgen;
+
+import common.Log;
+import common.PipeTransport;
+import server.BoardPool;
+import server.ConcentrationClientServerTask;
+import server.ConcentrationServer;
+import server.ConcentrationSession;
+import server.HashedWheelTimer;
+import server.LoopbackTransport;
+import server.ServerMetrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays games against the server side code inside this JVM, with no
+ * sockets involved, and reports what a game costs in CPU time and in heap
+ * allocation.  Each game gets a board from a {@link BoardPool}, a real
+ * {@link ConcentrationSession}, and a {@link LoadSession} player, so the
+ * cost covers dealing the board, the request handling with its metrics,
+ * the board's reveals and the player's own small share.
+ *
+ * Over the loopback transport everything runs on the calling thread and
+ * only that thread is measured.  Over the pipe transport each game is
+ * served by a {@link ConcentrationClientServerTask} on its own virtual
+ * thread, and the whole process is measured.
+ */
+public class ConcentrationHarness {
+    /**
+     * bytes each direction of a pipe holds
+     */
+    private final static int PIPE_CAPACITY = 4096;
+
+    private final HarnessOptions options;
+    private final BoardPool boards;
+    private final AtomicInteger clientId;
+    private final ServerMetrics metrics;
+    private HashedWheelTimer timer;
+
+    /**
+     * Create the harness.
+     *
+     * @param options the run settings
+     */
+    public ConcentrationHarness(HarnessOptions options) {
+        this.options = options;
+        // dealt on the playing thread, so the deal is part of the game's cost
+        this.boards = new BoardPool(options.getBoardKind(), 0, options.getSeed());
+        this.clientId = new AtomicInteger();
+        this.metrics = new ServerMetrics();
+    }
+
+    /**
+     * Have every player play its games.
+     *
+     * @param player the player settings, including the games to play
+     * @return what the players measured
+     */
+    private LoadStatistics play(LoadOptions player) {
+        LoadStatistics statistics = new LoadStatistics();
+        if (options.getTransport() == HarnessOptions.Transport.LOOPBACK) {
+            for (int i = 1; i <= player.getSessions(); ++i) {
+                LoopbackTransport loopback = new LoopbackTransport();
+                new LoadSession(player, statistics, i, () -> loopback.connect(new ConcentrationSession(
+                        boards.take(options.getDimension()), clientId.incrementAndGet(), 0, metrics))).run();
+            }
+            return statistics;
+        }
+        if (timer == null) {
+            timer = ConcentrationServer.newTaskTimer();
+        }
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 1; i <= player.getSessions(); ++i) {
+                sessions.execute(new LoadSession(player, statistics, i, () -> {
+                    PipeTransport server = new PipeTransport(PIPE_CAPACITY);
+                    ConcentrationSession session = new ConcentrationSession(boards.take(options.getDimension()),
+                            clientId.incrementAndGet(), options.getMismatchDelayMillis(), metrics);
+                    Thread.ofVirtual().start(new ConcentrationClientServerTask(server, session, timer, metrics));
+                    return server.getPeer();
+                }));
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Play the measured games and print the report.
+     */
+    private void run() {
+        LoadOptions player = options.getPlayer();
+        if (options.getWarmup() > 0) {
+            play(player.withGames(options.getWarmup()));
+        }
+        boolean loopback = options.getTransport() == HarnessOptions.Transport.LOOPBACK;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        com.sun.management.OperatingSystemMXBean system =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+        long gcCount = -gcCount();
+        long gcMillis = -gcMillis();
+        long cpu = -(loopback ? threads.getCurrentThreadCpuTime() : system.getProcessCpuTime());
+        long allocated = -(loopback
+                ? threads.getCurrentThreadAllocatedBytes() : threads.getTotalThreadAllocatedBytes());
+        long start = System.nanoTime();
+        LoadStatistics statistics = play(player);
+        long elapsed = System.nanoTime() - start;
+        allocated += loopback ? threads.getCurrentThreadAllocatedBytes() : threads.getTotalThreadAllocatedBytes();
+        cpu += loopback ? threads.getCurrentThreadCpuTime() : system.getProcessCpuTime();
+        gcMillis += gcMillis();
+        gcCount += gcCount();
+
+        statistics.report(System.out, elapsed);
+        long games = Math.max(1, statistics.getGames() + statistics.getErrors());
+        System.out.printf("per game (%s): %.2f us CPU, %d bytes allocated%n",
+                loopback ? "playing thread" : "whole process", cpu / 1e3 / games, allocated / games);
+        System.out.printf("gc: %d collections, %d ms%n", gcCount, gcMillis);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Run the harness and print the report.
+     * See {@link HarnessOptions#USAGE} for the arguments.
+     */
+    public static void main(String[] args) {
+        HarnessOptions options;
+        try {
+            options = HarnessOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(HarnessOptions.USAGE);
+            return;
+        }
+        // a line per game would measure the logger instead of the game
+        Log.setLevel(Log.Level.WARN);
+        LoadOptions player = options.getPlayer();
+        System.out.printf("Playing %d x %d games (after %d warmup) over %s, DIM=%d, board=%s, seed=%d, " +
+                        "strategy=%s, protocol=%s%n",
+                player.getSessions(), player.getGames(), options.getWarmup(), options.getTransport(),
+                options.getDimension(), options.getBoardKind(), options.getSeed(), player.getStrategy(),
+                player.isBinary() ? "binary" : "text");
+        new ConcentrationHarness(options).run();
+    }
+}
@@ -0,0 +1,38 @@
+package loadgen;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A headless client that plays many games against a server at once and
+ * reports how fast the server answered.  Each session runs on its own
+ * virtual thread, so thousands of concurrent sessions are cheap.
+ */
+public class ConcentrationLoadGenerator {
+    /**
+     * Run the sessions and print the report.
+     * See {@link LoadOptions#USAGE} for the arguments.
+     */
+    public static void main(String[] args) {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(LoadOptions.USAGE);
+            return;
+        }
+        System.out.printf("Playing %d x %d games against %s:%d, strategy=%s, think=%dms, protocol=%s, reveal=%s, "
+                        + "room=%d%n", options.getSessions(), options.getGames(), options.getHost(),
+                options.getPortNumber(), options.getStrategy(), options.getThinkMillis(),
+                options.isBinary() ? "binary" : "text", options.getReveal(), options.getRoomSize());
+        LoadStatistics statistics = new LoadStatistics();
+        long start = System.nanoTime();
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 1; i <= options.getSessions(); ++i) {
+                sessions.execute(new LoadSession(options, statistics, i));
+            }
+        }
+        statistics.report(System.out, System.nanoTime() - start);
+    }
+}
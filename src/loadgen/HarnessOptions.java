@@ -0,0 +1,144 @@
+package loadgen;
+
+import game.BoardKind;
+
+import java.util.SplittableRandom;
+
+/**
+ * The command line settings of the in-process harness: the board
+ * dimension, followed by optional "--name value" pairs.
+ */
+public class HarnessOptions {
+    /**
+     * the usage message printed for bad arguments
+     */
+    public final static String USAGE =
+            "Usage: java ConcentrationHarness <board dimension> [options]\n" +
+            "  --transport loopback|pipe   play each game on one thread straight against its session,\n" +
+            "                              or against a server task over an in-memory pipe\n" +
+            "                              (default loopback)\n" +
+            "  --sessions <n>              players; loopback plays them one after another (default 1)\n" +
+            "  --games <n>                 games each player plays (default 1000000)\n" +
+            "  --warmup <n>                games each player plays first, not measured (default 100000)\n" +
+            "  --strategy random|memory    forget every card, or remember every card (default memory)\n" +
+            "  --protocol text|binary      protocol to play in (default text)\n" +
+            "  --reveal single|pipelined|pair\n" +
+            "                              how the two cards of a turn are asked for (default single)\n" +
+            "  --board object|bitset|large the board the server deals (default object)\n" +
+            "  --seed <n>                  seed of the board deals, for a repeatable run (default random)\n" +
+            "  --mismatch-delay <ms>       pipe only, loopback has no clock (default 0)";
+
+    /**
+     * How a game reaches the server side.
+     */
+    public enum Transport {
+        /** the player's reads run the session on the same thread */
+        LOOPBACK,
+        /** a server task on its own virtual thread, behind a pipe */
+        PIPE
+    }
+
+    private final LoadOptions player;
+    private final int dimension;
+    private Transport transport;
+    private int warmup;
+    private BoardKind boardKind;
+    private long seed;
+    private long mismatchDelayMillis;
+
+    /**
+     * Create the default options for a dimension.
+     *
+     * @param dimension dimension of the gameboard
+     */
+    public HarnessOptions(int dimension) {
+        this.player = new LoadOptions(0, 1, 1000000);
+        this.dimension = dimension;
+        this.transport = Transport.LOOPBACK;
+        this.warmup = 100000;
+        this.boardKind = BoardKind.OBJECT;
+        this.seed = new SplittableRandom().nextLong();
+        this.mismatchDelayMillis = 0;
+    }
+
+    /**
+     * Parse the command line.
+     *
+     * @param args the command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if the arguments are malformed
+     */
+    public static HarnessOptions parse(String[] args) {
+        if (args.length < 1 || args.length % 2 != 1) {
+            throw new IllegalArgumentException("Wrong number of arguments");
+        }
+        HarnessOptions options = new HarnessOptions(Integer.parseInt(args[0]));
+        for (int i = 1; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--transport":
+                    options.transport = Transport.valueOf(value.toUpperCase());
+                    break;
+                case "--warmup":
+                    options.warmup = Integer.parseInt(value);
+                    break;
+                case "--board":
+                    options.boardKind = BoardKind.valueOf(value.toUpperCase());
+                    break;
+                case "--seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                case "--mismatch-delay":
+                    options.mismatchDelayMillis = Long.parseLong(value);
+                    break;
+                case "--sessions":
+                case "--games":
+                case "--strategy":
+                case "--protocol":
+                case "--reveal":
+                    options.player.set(args[i], value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        options.player.check();
+        if (options.warmup < 0 || options.mismatchDelayMillis < 0) {
+            throw new IllegalArgumentException("Option out of range");
+        }
+        return options;
+    }
+
+    /**
+     * Get how the players play: their number, games, strategy and protocol.
+     *
+     * @return the player settings
+     */
+    public LoadOptions getPlayer() {
+        return player;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public BoardKind getBoardKind() {
+        return boardKind;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getMismatchDelayMillis() {
+        return mismatchDelayMillis;
+    }
+}
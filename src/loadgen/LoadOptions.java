@@ -0,0 +1,233 @@
+package loadgen;
+
+import java.net.InetAddress;
+
+/**
+ * The command line settings of the load generator: the server port,
+ * followed by optional "--name value" pairs.
+ */
+public class LoadOptions {
+    /**
+     * the usage message printed for bad arguments
+     */
+    public final static String USAGE =
+            "Usage: java ConcentrationLoadGenerator <port number> [options]\n" +
+            "  --host <name>               server host (default the loopback address)\n" +
+            "  --sessions <n>              concurrent sessions (default 100)\n" +
+            "  --games <n>                 games each session plays, one connection each (default 1)\n" +
+            "  --strategy random|memory    forget every card, or remember every card (default memory)\n" +
+            "  --think <ms>                pause before each reveal (default 0)\n" +
+            "  --protocol text|binary      protocol to play in (default text)\n" +
+            "  --reveal single|pipelined|pair\n" +
+            "                              wait for each card, send both REVEALs of a turn at once,\n" +
+            "                              or send one REVEAL_PAIR (default single)\n" +
+            "  --timeout <ms>              fail a game whose server goes quiet this long (default 30000)\n" +
+            "  --room-size <n>             play in rooms of n players taking turns; must match the\n" +
+            "                              server's --room-size and divide --sessions (default 1)\n" +
+            "MISMATCH latencies include the server's mismatch delay; start the server\n" +
+            "with --mismatch-delay 0 to measure the server alone.";
+
+    /**
+     * How a session picks its cards.
+     */
+    public enum Strategy {
+        /** turns over random unmatched cards and remembers nothing */
+        RANDOM,
+        /** remembers every card it has seen and matches known pairs first */
+        MEMORY
+    }
+
+    /**
+     * How a session asks for the two cards of a turn.
+     */
+    public enum Reveal {
+        /** one REVEAL, waiting for its card before picking the second */
+        SINGLE,
+        /** both REVEALs at once; the second card is picked blind */
+        PIPELINED,
+        /** one REVEAL_PAIR; the second card is picked blind */
+        PAIR
+    }
+
+    private String host;
+    private int portNumber;
+    private int sessions;
+    private int games;
+    private Strategy strategy;
+    private Reveal reveal;
+    private long thinkMillis;
+    private boolean binary;
+    private int timeoutMillis;
+    private int roomSize;
+
+    /**
+     * Create the default options for a port.
+     *
+     * @param portNumber the port of the server
+     */
+    public LoadOptions(int portNumber) {
+        this(portNumber, 100, 1);
+    }
+
+    /**
+     * Create the default options with other numbers of sessions and games.
+     *
+     * @param portNumber the port of the server
+     * @param sessions concurrent sessions
+     * @param games games each session plays
+     */
+    LoadOptions(int portNumber, int sessions, int games) {
+        this.host = InetAddress.getLoopbackAddress().getHostAddress();
+        this.portNumber = portNumber;
+        this.sessions = sessions;
+        this.games = games;
+        this.strategy = Strategy.MEMORY;
+        this.reveal = Reveal.SINGLE;
+        this.thinkMillis = 0;
+        this.binary = false;
+        this.timeoutMillis = 30000;
+        this.roomSize = 1;
+    }
+
+    /**
+     * Parse the command line.
+     *
+     * @param args the command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if the arguments are malformed
+     */
+    public static LoadOptions parse(String[] args) {
+        if (args.length < 1 || args.length % 2 != 1) {
+            throw new IllegalArgumentException("Wrong number of arguments");
+        }
+        LoadOptions options = new LoadOptions(Integer.parseInt(args[0]));
+        for (int i = 1; i < args.length; i += 2) {
+            if (!options.set(args[i], args[i + 1])) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        options.check();
+        return options;
+    }
+
+    /**
+     * Apply one option from a command line.
+     *
+     * @param name the option, like "--games"
+     * @param value its value
+     * @return false if there is no such option
+     * @throws IllegalArgumentException if the value is malformed
+     */
+    boolean set(String name, String value) {
+        switch (name) {
+            case "--host":
+                this.host = value;
+                break;
+            case "--sessions":
+                this.sessions = Integer.parseInt(value);
+                break;
+            case "--games":
+                this.games = Integer.parseInt(value);
+                break;
+            case "--strategy":
+                this.strategy = Strategy.valueOf(value.toUpperCase());
+                break;
+            case "--reveal":
+                this.reveal = Reveal.valueOf(value.toUpperCase());
+                break;
+            case "--think":
+                this.thinkMillis = Long.parseLong(value);
+                break;
+            case "--protocol":
+                if (!value.equals("text") && !value.equals("binary")) {
+                    throw new IllegalArgumentException("Unknown protocol " + value);
+                }
+                this.binary = value.equals("binary");
+                break;
+            case "--timeout":
+                this.timeoutMillis = Integer.parseInt(value);
+                break;
+            case "--room-size":
+                this.roomSize = Integer.parseInt(value);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check that every option is in range.
+     *
+     * @throws IllegalArgumentException if one is not
+     */
+    void check() {
+        if (sessions < 1 || games < 1 || thinkMillis < 0 || timeoutMillis < 0 || roomSize < 1
+                || sessions % roomSize != 0 || (roomSize > 1 && reveal != Reveal.SINGLE)) {
+            throw new IllegalArgumentException("Option out of range");
+        }
+    }
+
+    /**
+     * Copy these options with another number of games.
+     *
+     * @param games games each session plays
+     * @return the copy
+     */
+    LoadOptions withGames(int games) {
+        LoadOptions copy = new LoadOptions(portNumber, sessions, games);
+        copy.host = host;
+        copy.strategy = strategy;
+        copy.reveal = reveal;
+        copy.thinkMillis = thinkMillis;
+        copy.binary = binary;
+        copy.timeoutMillis = timeoutMillis;
+        copy.roomSize = roomSize;
+        return copy;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public Reveal getReveal() {
+        return reveal;
+    }
+
+    public long getThinkMillis() {
+        return thinkMillis;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Get the number of players sharing a board.
+     *
+     * @return the room size, 1 for a game per session
+     */
+    public int getRoomSize() {
+        return roomSize;
+    }
+}
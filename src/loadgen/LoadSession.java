@@ -0,0 +1,534 @@
+package loadgen;
+
+import common.BinaryCodec;
+import common.BinaryProtocol;
+import common.ConcentrationException;
+import common.ConcentrationMessage;
+import common.Log;
+import common.SocketTransport;
+import common.TextCodec;
+import common.Transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * One simulated player.  It plays its games one after another, each on a
+ * new connection, blocking on the transport like the GUI's controller, and
+ * times every message the server sends back.  In a shared room it watches
+ * the other players' cards too, and times only the responses to its own
+ * reveals.
+ */
+public class LoadSession implements Runnable {
+    /**
+     * Opens the connection each game is played over.
+     */
+    public interface Connector {
+        /**
+         * Connect to a server that starts a new game.
+         *
+         * @return the connection, closed by the session after the game
+         */
+        Transport connect() throws IOException, ConcentrationException;
+    }
+
+    private final LoadOptions options;
+    private final LoadStatistics statistics;
+    private final int sessionId;
+    private final Connector connector;
+    private final SplittableRandom random;
+
+    private Transport transport;
+    private boolean binaryMode;
+    private final ByteBuffer input;
+    private final ByteBuffer request;
+    private final TextCodec textCodec;
+    private final ConcentrationMessage message;
+
+    /*
+     * THE GAME BEING PLAYED
+     */
+
+    private int dim;
+    private int pairs;
+    private int matches;
+    /**
+     * the symbol of each card seen so far, -1 if not seen
+     */
+    private int[] symbols;
+    /**
+     * has the card been matched?
+     */
+    private boolean[] matched;
+    /**
+     * for the memory strategy: a seen, unmatched card of each symbol, or -1
+     */
+    private int[] seenAt;
+    /**
+     * for the memory strategy: pairs known by position but not matched yet
+     */
+    private int[] knownPairs;
+    private int knownPairCount;
+    /**
+     * for the memory strategy: every card before this one has been seen
+     */
+    private int nextUnseen;
+    /**
+     * for the random strategy: the unmatched cards, and where each is in it
+     */
+    private int[] unmatched;
+    private int[] unmatchedIndex;
+    private int unmatchedCount;
+
+    /**
+     * Create a session that connects to the server over TCP.
+     *
+     * @param options the run settings
+     * @param statistics where to count what is measured
+     * @param sessionId the number of this session, for messages
+     */
+    public LoadSession(LoadOptions options, LoadStatistics statistics, int sessionId) {
+        this(options, statistics, sessionId, () -> connect(options));
+    }
+
+    /**
+     * Create a session.
+     *
+     * @param options the run settings
+     * @param statistics where to count what is measured
+     * @param sessionId the number of this session, for messages
+     * @param connector opens the connection of each game
+     */
+    public LoadSession(LoadOptions options, LoadStatistics statistics, int sessionId, Connector connector) {
+        this.options = options;
+        this.statistics = statistics;
+        this.sessionId = sessionId;
+        this.connector = connector;
+        this.random = new SplittableRandom();
+        this.input = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.request = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.textCodec = new TextCodec();
+        this.message = new ConcentrationMessage();
+    }
+
+    /**
+     * Play all the games.
+     */
+    @Override
+    public void run() {
+        for (int game = 0; game < options.getGames(); ++game) {
+            try {
+                play();
+                statistics.gameOver();
+            } catch (IOException | ConcentrationException e) {
+                statistics.failed();
+                Log.warn("Session #%d: %s", sessionId, e.getMessage());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Open a TCP connection to the server.
+     */
+    private static Transport connect(LoadOptions options) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setSoTimeout(options.getTimeoutMillis());
+            socket.connect(new InetSocketAddress(options.getHost(), options.getPortNumber()),
+                    options.getTimeoutMillis());
+            return new SocketTransport(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connect and play one game to GAME_OVER.
+     */
+    private void play() throws IOException, ConcentrationException, InterruptedException {
+        long start = System.nanoTime();
+        try (Transport connection = connector.connect()) {
+            long connected = System.nanoTime();
+            statistics.connected(connected - start);
+            transport = connection;
+            input.clear();
+            binaryMode = false;
+
+            expect(ConcentrationMessage.Type.BOARD_DIM, connected);
+            newGame(message.getRow1());
+            if (options.getRoomSize() > 1) {
+                playRoom(connected);
+                return;
+            }
+            if (options.isBinary()) {
+                request.clear();
+                TextCodec.putLine(request, BinaryProtocol.BINARY);
+                long sent = send();
+                expect(ConcentrationMessage.Type.BINARY, sent);
+                binaryMode = true;
+            }
+
+            while (matches < pairs) {
+                int first = pickFirst();
+                int second;
+                long sent;
+                if (options.getReveal() == LoadOptions.Reveal.SINGLE) {
+                    reveal(first);
+                    second = pickSecond(first);
+                    sent = revealSent(second);
+                } else {
+                    // picked before the first card is seen, so only a known pair helps
+                    second = pickSecond(first);
+                    sent = pairSent(first, second);
+                    expectCard(first, sent);
+                    seen(first, message.getSymbol());
+                }
+                expectCard(second, sent);
+                seen(second, message.getSymbol());
+                read();
+                statistics.received(message.getType(), System.nanoTime() - sent);
+                if (message.getType() != ConcentrationMessage.Type.MATCH
+                        && message.getType() != ConcentrationMessage.Type.MISMATCH) {
+                    throw unexpected("MATCH or MISMATCH");
+                }
+                checkCard(first, message.getRow1(), message.getCol1());
+                checkCard(second, message.getRow2(), message.getCol2());
+                if (message.getType() == ConcentrationMessage.Type.MATCH) {
+                    matched(first, second);
+                }
+                if (matches == pairs) {
+                    expect(ConcentrationMessage.Type.GAME_OVER, sent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Play one game in a shared room: take turns until GAME_OVER.  Every
+     * message is read in one loop, since the other players' moves arrive
+     * at any time, and the session reveals whenever it has the turn and
+     * is not waiting for a response.
+     */
+    private void playRoom(long connected) throws IOException, ConcentrationException, InterruptedException {
+        expect(ConcentrationMessage.Type.ROOM, connected);
+        int seat = message.getRow1();
+        boolean switching = false;
+        long binarySent = 0;
+        if (options.isBinary()) {
+            request.clear();
+            TextCodec.putLine(request, BinaryProtocol.BINARY);
+            binarySent = send();
+            switching = true;
+        }
+        boolean myTurn = false;
+        // the cards of the reveals in flight, -1 for none
+        int first = -1;
+        int second = -1;
+        long sent = 0;
+        // was the last pair turned over this session's?
+        boolean mine = false;
+        while (true) {
+            if (myTurn && !switching && first < 0 && matches < pairs) {
+                first = pickFirst();
+                sent = revealSent(first);
+            }
+            read();
+            switch (message.getType()) {
+                case BINARY:
+                    statistics.received(message.getType(), System.nanoTime() - binarySent);
+                    binaryMode = true;
+                    switching = false;
+                    break;
+                case TURN:
+                    myTurn = message.getRow1() == seat;
+                    break;
+                case CARD:
+                    int card = cardAt(message.getRow1(), message.getCol1());
+                    seen(card, message.getSymbol());
+                    if (card == first && second < 0) {
+                        statistics.received(message.getType(), System.nanoTime() - sent);
+                        second = pickSecond(first);
+                        sent = revealSent(second);
+                    } else if (card == second) {
+                        statistics.received(message.getType(), System.nanoTime() - sent);
+                    }
+                    break;
+                case MATCH:
+                case MISMATCH:
+                    int card1 = cardAt(message.getRow1(), message.getCol1());
+                    int card2 = cardAt(message.getRow2(), message.getCol2());
+                    if (message.getType() == ConcentrationMessage.Type.MATCH) {
+                        matched(card1, card2);
+                    }
+                    mine = card1 == first && card2 == second;
+                    if (mine) {
+                        statistics.received(message.getType(), System.nanoTime() - sent);
+                        first = -1;
+                        second = -1;
+                        // a match keeps the turn, a mismatch passes it on with a TURN to follow
+                        myTurn = message.getType() == ConcentrationMessage.Type.MATCH;
+                    }
+                    break;
+                case SCORE:
+                    break;
+                case GAME_OVER:
+                    if (mine) {
+                        statistics.received(message.getType(), System.nanoTime() - sent);
+                    }
+                    return;
+                default:
+                    throw unexpected("a message of the room");
+            }
+        }
+    }
+
+    /**
+     * Turn over a card and remember it.
+     */
+    private void reveal(int card) throws IOException, ConcentrationException, InterruptedException {
+        long sent = revealSent(card);
+        expectCard(card, sent);
+        seen(card, message.getSymbol());
+    }
+
+    /**
+     * Think, then send a reveal request.
+     *
+     * @return when it was sent
+     */
+    private long revealSent(int card) throws IOException, InterruptedException {
+        if (options.getThinkMillis() > 0) {
+            Thread.sleep(options.getThinkMillis());
+        }
+        request.clear();
+        if (binaryMode) {
+            BinaryCodec.putReveal(request, card / dim, card % dim);
+        } else {
+            TextCodec.putReveal(request, card / dim, card % dim);
+        }
+        statistics.revealed();
+        return send();
+    }
+
+    /**
+     * Think, then ask for both cards of a turn without waiting for the
+     * first: as two pipelined REVEALs in one write, or as a REVEAL_PAIR.
+     *
+     * @return when it was sent
+     */
+    private long pairSent(int first, int second) throws IOException, InterruptedException {
+        if (options.getThinkMillis() > 0) {
+            Thread.sleep(options.getThinkMillis());
+        }
+        request.clear();
+        int row1 = first / dim;
+        int col1 = first % dim;
+        int row2 = second / dim;
+        int col2 = second % dim;
+        if (options.getReveal() == LoadOptions.Reveal.PAIR) {
+            if (binaryMode) {
+                BinaryCodec.putRevealPair(request, row1, col1, row2, col2);
+            } else {
+                TextCodec.putRevealPair(request, row1, col1, row2, col2);
+            }
+        } else if (binaryMode) {
+            BinaryCodec.putReveal(request, row1, col1);
+            BinaryCodec.putReveal(request, row2, col2);
+        } else {
+            TextCodec.putReveal(request, row1, col1);
+            TextCodec.putReveal(request, row2, col2);
+        }
+        statistics.revealed();
+        statistics.revealed();
+        return send();
+    }
+
+    private long send() throws IOException {
+        long now = System.nanoTime();
+        transport.write(request.flip());
+        return now;
+    }
+
+    /**
+     * Read the next message, count it, and fail unless it has the type.
+     */
+    private void expect(ConcentrationMessage.Type type, long sent) throws IOException, ConcentrationException {
+        read();
+        statistics.received(message.getType(), System.nanoTime() - sent);
+        if (message.getType() != type) {
+            throw unexpected(type.toString());
+        }
+    }
+
+    /**
+     * Read the next message, count it, and fail unless it is the CARD of
+     * the card revealed.
+     */
+    private void expectCard(int card, long sent) throws IOException, ConcentrationException {
+        expect(ConcentrationMessage.Type.CARD, sent);
+        checkCard(card, message.getRow1(), message.getCol1());
+    }
+
+    /**
+     * Fail unless a response names the card revealed, so that a server
+     * that garbles the coordinates fails the run.
+     */
+    private void checkCard(int card, int row, int col) throws ConcentrationException {
+        if (cardAt(row, col) != card) {
+            throw new ConcentrationException(String.format("Expected card %d %d but got %d %d",
+                    card / dim, card % dim, row, col));
+        }
+    }
+
+    /**
+     * Get the index of a card a response names, failing if it is off the
+     * board.
+     */
+    private int cardAt(int row, int col) throws ConcentrationException {
+        if (row < 0 || row >= dim || col < 0 || col >= dim) {
+            throw new ConcentrationException(String.format("Card %d %d is off the board", row, col));
+        }
+        return row * dim + col;
+    }
+
+    private ConcentrationException unexpected(String wanted) {
+        String got = message.getType() == ConcentrationMessage.Type.ERROR
+                ? "ERROR " + message.getText() : message.getType().toString();
+        return new ConcentrationException("Expected " + wanted + " but got " + got);
+    }
+
+    private void read() throws IOException, ConcentrationException {
+        while (true) {
+            input.flip();
+            boolean complete = binaryMode ? BinaryCodec.decode(input, message) : textCodec.decode(input, message);
+            input.compact();
+            if (complete) {
+                if (message.getType() != ConcentrationMessage.Type.SESSION) {
+                    return;
+                }
+                // the games are never resumed, so their tokens are skipped
+                continue;
+            }
+            if (transport.read(input) < 0) {
+                throw new IOException("Connection closed");
+            }
+        }
+    }
+
+    /*
+     * STRATEGIES
+     */
+
+    private void newGame(int dim) {
+        int cards = dim * dim;
+        if (symbols == null || symbols.length != cards) {
+            symbols = new int[cards];
+            matched = new boolean[cards];
+            seenAt = new int[cards / 2];
+            knownPairs = new int[cards];
+            unmatched = new int[cards];
+            unmatchedIndex = new int[cards];
+        }
+        this.dim = dim;
+        this.pairs = cards / 2;
+        this.matches = 0;
+        Arrays.fill(symbols, -1);
+        Arrays.fill(matched, false);
+        Arrays.fill(seenAt, -1);
+        knownPairCount = 0;
+        nextUnseen = 0;
+        for (int card = 0; card < cards; ++card) {
+            unmatched[card] = card;
+            unmatchedIndex[card] = card;
+        }
+        unmatchedCount = cards;
+    }
+
+    private int pickFirst() {
+        if (options.getStrategy() == LoadOptions.Strategy.RANDOM) {
+            return unmatched[random.nextInt(unmatchedCount)];
+        }
+        while (knownPairCount > 0) {
+            int card = knownPairs[knownPairCount - 2];
+            if (!matched[card]) {
+                return card;
+            }
+            knownPairCount -= 2;
+        }
+        return unseen(-1);
+    }
+
+    private int pickSecond(int first) {
+        if (options.getStrategy() == LoadOptions.Strategy.RANDOM) {
+            int card;
+            do {
+                card = unmatched[random.nextInt(unmatchedCount)];
+            } while (card == first);
+            return card;
+        }
+        // if the first card's partner has been seen, seen() has just put
+        // the pair on top, unless it was already there
+        if (knownPairCount > 0) {
+            if (knownPairs[knownPairCount - 2] == first) {
+                return knownPairs[knownPairCount - 1];
+            } else if (knownPairs[knownPairCount - 1] == first) {
+                return knownPairs[knownPairCount - 2];
+            }
+        }
+        return unseen(first);
+    }
+
+    /**
+     * The first card not seen yet, other than the one given.
+     */
+    private int unseen(int except) {
+        while (symbols[nextUnseen] >= 0) {
+            nextUnseen++;
+        }
+        if (nextUnseen != except) {
+            return nextUnseen;
+        }
+        int card = nextUnseen + 1;
+        while (symbols[card] >= 0) {
+            card++;
+        }
+        return card;
+    }
+
+    private void seen(int card, int symbol) {
+        if (symbols[card] >= 0) {
+            return;
+        }
+        symbols[card] = symbol;
+        int other = seenAt[symbol];
+        if (other < 0) {
+            seenAt[symbol] = card;
+        } else {
+            knownPairs[knownPairCount++] = other;
+            knownPairs[knownPairCount++] = card;
+            seenAt[symbol] = -1;
+        }
+    }
+
+    private void matched(int first, int second) {
+        matches++;
+        matched[first] = true;
+        matched[second] = true;
+        removeUnmatched(first);
+        removeUnmatched(second);
+    }
+
+    private void removeUnmatched(int card) {
+        int index = unmatchedIndex[card];
+        int last = unmatched[--unmatchedCount];
+        unmatched[index] = last;
+        unmatchedIndex[last] = index;
+    }
+}
@@ -0,0 +1,133 @@
+package loadgen;
+
+import common.ConcentrationMessage;
+import common.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What all the sessions of a load run measured.  Shared by the sessions,
+ * so everything in it can be updated from any thread.
+ */
+public class LoadStatistics {
+    /**
+     * the message types reported, in protocol order
+     */
+    private final static ConcentrationMessage.Type[] REPORTED = {
+            ConcentrationMessage.Type.BOARD_DIM, ConcentrationMessage.Type.BINARY, ConcentrationMessage.Type.CARD,
+            ConcentrationMessage.Type.MATCH, ConcentrationMessage.Type.MISMATCH, ConcentrationMessage.Type.GAME_OVER};
+
+    private final LatencyHistogram connect;
+    private final Map<ConcentrationMessage.Type, LatencyHistogram> responses;
+    private final LongAdder games;
+    private final LongAdder reveals;
+    private final LongAdder errors;
+
+    /**
+     * Create empty statistics.
+     */
+    public LoadStatistics() {
+        this.connect = new LatencyHistogram();
+        this.responses = new EnumMap<>(ConcentrationMessage.Type.class);
+        for (ConcentrationMessage.Type type : REPORTED) {
+            responses.put(type, new LatencyHistogram());
+        }
+        this.games = new LongAdder();
+        this.reveals = new LongAdder();
+        this.errors = new LongAdder();
+    }
+
+    /**
+     * Count a connection.
+     *
+     * @param nanos how long the connect took
+     */
+    public void connected(long nanos) {
+        connect.record(nanos);
+    }
+
+    /**
+     * Count a message from the server.
+     *
+     * @param type the type of the message
+     * @param nanos how long after the request that caused it, or after the
+     *              connect for BOARD_DIM, it arrived
+     */
+    public void received(ConcentrationMessage.Type type, long nanos) {
+        LatencyHistogram histogram = responses.get(type);
+        if (histogram != null) {
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Count a reveal request.
+     */
+    public void revealed() {
+        reveals.increment();
+    }
+
+    /**
+     * Count a game played to GAME_OVER.
+     */
+    public void gameOver() {
+        games.increment();
+    }
+
+    /**
+     * Count a game that failed.
+     */
+    public void failed() {
+        errors.increment();
+    }
+
+    /**
+     * Get the number of games played to GAME_OVER so far.
+     *
+     * @return the games
+     */
+    public long getGames() {
+        return games.sum();
+    }
+
+    /**
+     * Get the number of games that failed so far.
+     *
+     * @return the failed games
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Print the report.
+     *
+     * @param out where to print it
+     * @param elapsedNanos how long the run took
+     */
+    public void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("games=%d errors=%d reveals=%d elapsed=%.2fs%n", games.sum(), errors.sum(), reveals.sum(),
+                seconds);
+        out.printf("throughput: %.1f games/s, %.1f reveals/s%n", games.sum() / seconds, reveals.sum() / seconds);
+        out.printf("%-10s %9s %10s %10s %10s %10s %10s  (microseconds)%n",
+                "latency", "count", "mean", "p50", "p99", "p999", "max");
+        print(out, "connect", connect);
+        for (ConcentrationMessage.Type type : REPORTED) {
+            LatencyHistogram histogram = responses.get(type);
+            if (histogram.getCount() > 0) {
+                print(out, type.toString(), histogram);
+            }
+        }
+    }
+
+    private static void print(PrintStream out, String name, LatencyHistogram histogram) {
+        out.printf("%-10s %9d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+                histogram.getMean() / 1e3, histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                histogram.getMax() / 1e3);
+    }
+}
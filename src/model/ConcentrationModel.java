@@ -1,7 +1,11 @@
 package model;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * A class that create the game board on the client side of the game.
@@ -9,14 +13,23 @@ import java.util.List;
 public class ConcentrationModel {
 
     public static final char HIDDEN = '.';
+    /**
+     * the symbol of a hidden card
+     */
+    public static final int HIDDEN_SYMBOL = -1;
 
     public enum Status {
+        /** connecting to the server; the board has not arrived yet */
+        CONNECTING,
         OK,
         ERROR,
         GAME_OVER
     }
 
-    private char[][] cards;
+    /**
+     * the symbol of each card, {@link #HIDDEN_SYMBOL} while it is hidden
+     */
+    private int[][] cards;
     private int dim;
     private Status status;
 
@@ -24,25 +37,73 @@ public class ConcentrationModel {
     private int matches;
 
     /**
-     * the observers of this model
+     * the observers of this model; copied on write, so that observers may
+     * be added while another thread notifies them
      */
     private List<Observer<ConcentrationModel>> observers;
+    /**
+     * the observers of the changes, see {@link #addChangeObserver}
+     */
+    private List<Observer<List<ModelChange>>> changeObservers;
+    /**
+     * runs the notifications of the change observers
+     */
+    private volatile Executor changeExecutor;
+    /**
+     * the changes made since the change observers were last notified,
+     * guarded by itself
+     */
+    private List<ModelChange> pending;
+    /**
+     * has a notification of the pending changes been handed to the executor?
+     */
+    private boolean scheduled;
 
     public ConcentrationModel() {
         this.status = Status.OK;
         this.moves = 0;
         this.matches = 0;
-        this.observers = new LinkedList<>();
+        this.observers = new CopyOnWriteArrayList<>();
+        this.changeObservers = new CopyOnWriteArrayList<>();
+        this.changeExecutor = Runnable::run;
+        this.pending = new ArrayList<>();
     }
 
     public void initBoard(int dim) {
         this.dim = dim;
-        cards = new char[dim][dim];
+        this.matches = 0;
+        cards = new int[dim][dim];
+        for (int row = 0; row < dim; row++) {
+            Arrays.fill(cards[row], HIDDEN_SYMBOL);
+        }
+        changed(ModelChange.board());
+    }
+
+    /**
+     * Set up the board of a game resumed over a new connection, as the
+     * server left it.  Two face up cards count as one match; of an odd
+     * card out, the first of a pair being turned over, there is one.  The
+     * moves made so far are kept.
+     *
+     * @param dim the dimension of the board
+     * @param symbols the symbol of each card, row by row,
+     *                {@link #HIDDEN_SYMBOL} for a hidden card
+     */
+    public void restore(int dim, int[] symbols) {
+        this.dim = dim;
+        cards = new int[dim][dim];
+        int faceUp = 0;
         for (int row = 0; row < dim; row++) {
             for (int col = 0; col < dim; col++) {
-                cards[row][col] = HIDDEN;
+                cards[row][col] = symbols[row * dim + col];
+                if (cards[row][col] != HIDDEN_SYMBOL) {
+                    ++faceUp;
+                }
             }
         }
+        this.matches = faceUp / 2;
+        changed(ModelChange.board());
+        notifyObservers();
     }
 
     public int getDim() {
@@ -51,6 +112,7 @@ public class ConcentrationModel {
 
     public void setStatus(Status status) {
         this.status = status;
+        changed(ModelChange.status(status));
         notifyObservers();
     }
 
@@ -67,17 +129,35 @@ public class ConcentrationModel {
     }
 
     public boolean isHidden(int row, int col) {
-        return cards[row][col] == HIDDEN;
+        return cards[row][col] == HIDDEN_SYMBOL;
     }
 
+    /**
+     * Get the letter of a card, for the boards whose symbols are all letters.
+     *
+     * @param row the row of the card
+     * @param col the col of the card
+     * @return the letter, {@link #HIDDEN} if the card is hidden
+     */
     public char getLetter(int row, int col) {
         if (isHidden(row, col)) {
             return HIDDEN;
         } else {
-            return cards[row][col];
+            return (char) ('A' + cards[row][col]);
         }
     }
 
+    /**
+     * Get the symbol of a card, 0 for the letter A.
+     *
+     * @param row the row of the card
+     * @param col the col of the card
+     * @return the symbol, {@link #HIDDEN_SYMBOL} if the card is hidden
+     */
+    public int getSymbol(int row, int col) {
+        return cards[row][col];
+    }
+
     /**
      * The view calls this method to add themselves as an observer of the model.
      *
@@ -87,6 +167,30 @@ public class ConcentrationModel {
         this.observers.add(observer);
     }
 
+    /**
+     * Add an observer of the changes themselves.  It is passed the changes
+     * made since its previous notification, in order, and so only has to
+     * look at the cards that changed.
+     *
+     * @param observer the observer; the list it is passed is read-only
+     */
+    public void addChangeObserver(Observer<List<ModelChange>> observer) {
+        this.changeObservers.add(observer);
+    }
+
+    /**
+     * Set where the change observers are notified, such as the GUI's
+     * thread.  The changes made before the executor gets round to a
+     * notification are all passed in that one notification, so a burst of
+     * changes costs one.  By default every change is passed right away,
+     * on the thread that made it.
+     *
+     * @param executor runs the notifications
+     */
+    public void setChangeExecutor(Executor executor) {
+        this.changeExecutor = executor;
+    }
+
     /**
      * When the model changes, the observers are notified via their update() method
      */
@@ -96,6 +200,38 @@ public class ConcentrationModel {
         }
     }
 
+    /**
+     * Record a change for the change observers, and have them notified
+     * unless a notification is already on its way.
+     */
+    private void changed(ModelChange change) {
+        if (changeObservers.isEmpty()) {
+            return;
+        }
+        boolean schedule;
+        synchronized (pending) {
+            pending.add(change);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            changeExecutor.execute(this::notifyChangeObservers);
+        }
+    }
+
+    private void notifyChangeObservers() {
+        List<ModelChange> changes;
+        synchronized (pending) {
+            changes = new ArrayList<>(pending);
+            pending.clear();
+            scheduled = false;
+        }
+        changes = Collections.unmodifiableList(changes);
+        for (Observer<List<ModelChange>> obs : this.changeObservers) {
+            obs.update(changes);
+        }
+    }
+
     /**
      * Method to reveal a card
      * the card with [row][col] position is replaced with a new ConcentrationCard with the same [row][col] and a new value [letter]
@@ -105,9 +241,21 @@ public class ConcentrationModel {
      * @param letter the value the revealed card will be
      */
     public void revealCard(int row, int col, char letter) {
-        cards[row][col] = letter;
+        revealCard(row, col, letter - 'A');
+    }
+
+    /**
+     * Method to reveal a card by its symbol, for boards with more pairs than letters
+     *
+     * @param row    the row of the revealed card
+     * @param col    the col of the revealed card
+     * @param symbol the symbol of the revealed card
+     */
+    public void revealCard(int row, int col, int symbol) {
+        cards[row][col] = symbol;
         moves++;
 //        System.out.println(String.format("Updating the UI with row: %d, col: %d, letter: %c", row, col, letter));
+        changed(ModelChange.revealed(row, col, symbol));
         notifyObservers();
     }
 
@@ -122,6 +270,8 @@ public class ConcentrationModel {
      */
     public void setMatch(int row1, int col1, int row2, int col2) {
         this.matches++;
+        changed(ModelChange.matched(row1, col1, cards[row1][col1]));
+        changed(ModelChange.matched(row2, col2, cards[row2][col2]));
         notifyObservers();
     }
 
@@ -135,8 +285,10 @@ public class ConcentrationModel {
      * @param col2 the col of card 2
      */
     public void setMismatch(int row1, int col1, int row2, int col2) {
-        cards[row1][col1] = HIDDEN;
-        cards[row2][col2] = HIDDEN;
+        cards[row1][col1] = HIDDEN_SYMBOL;
+        cards[row2][col2] = HIDDEN_SYMBOL;
+        changed(ModelChange.hidden(row1, col1));
+        changed(ModelChange.hidden(row2, col2));
         notifyObservers();
     }
 
@@ -151,7 +303,7 @@ public class ConcentrationModel {
      */
     public boolean isValid(int row, int col) {
         if (row < 0 || row >= dim || col < 0 || col >= dim) return false;
-        if (cards[row][col] == HIDDEN) {
+        if (cards[row][col] == HIDDEN_SYMBOL) {
             return true;
         } else {
             return false;
@@ -0,0 +1,110 @@
+package model;
+
+/**
+ * One change to a {@link ConcentrationModel}: the board set up, a card
+ * revealed, matched or hidden again, or the status changed.  Observers of
+ * the changes get them in the order they were made, so that they only
+ * touch what changed.
+ */
+public class ModelChange {
+
+    public enum Kind {
+        /** the board was set up, or restored; its dimension and cards are the model's */
+        BOARD,
+        /** a card was turned over; its symbol is known */
+        REVEALED,
+        /** a revealed card was matched and stays revealed */
+        MATCHED,
+        /** a revealed card was turned back over after a mismatch */
+        HIDDEN,
+        /** the status of the game changed */
+        STATUS
+    }
+
+    private final Kind kind;
+    private final int row;
+    private final int col;
+    private final int symbol;
+    private final ConcentrationModel.Status status;
+
+    private ModelChange(Kind kind, int row, int col, int symbol, ConcentrationModel.Status status) {
+        this.kind = kind;
+        this.row = row;
+        this.col = col;
+        this.symbol = symbol;
+        this.status = status;
+    }
+
+    static ModelChange board() {
+        return new ModelChange(Kind.BOARD, -1, -1, ConcentrationModel.HIDDEN_SYMBOL, null);
+    }
+
+    static ModelChange revealed(int row, int col, int symbol) {
+        return new ModelChange(Kind.REVEALED, row, col, symbol, null);
+    }
+
+    static ModelChange matched(int row, int col, int symbol) {
+        return new ModelChange(Kind.MATCHED, row, col, symbol, null);
+    }
+
+    static ModelChange hidden(int row, int col) {
+        return new ModelChange(Kind.HIDDEN, row, col, ConcentrationModel.HIDDEN_SYMBOL, null);
+    }
+
+    static ModelChange status(ConcentrationModel.Status status) {
+        return new ModelChange(Kind.STATUS, -1, -1, ConcentrationModel.HIDDEN_SYMBOL, status);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the row of the card, -1 for a board or status change
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return the col of the card, -1 for a board or status change
+     */
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * @return the symbol of a revealed or matched card,
+     *         {@link ConcentrationModel#HIDDEN_SYMBOL} otherwise
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the letter of a revealed or matched card, for the boards
+     *         whose symbols are all letters; {@link ConcentrationModel#HIDDEN} otherwise
+     */
+    public char getLetter() {
+        return symbol == ConcentrationModel.HIDDEN_SYMBOL ? ConcentrationModel.HIDDEN : (char) ('A' + symbol);
+    }
+
+    /**
+     * @return the new status, null if this is not a status change
+     */
+    public ConcentrationModel.Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case BOARD:
+                return kind.toString();
+            case STATUS:
+                return kind + " " + status;
+            default:
+                return kind + " " + row + " " + col + " " + symbol;
+        }
+    }
+}
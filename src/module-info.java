@@ -1,4 +1,8 @@
 module ConcentrationGUI {
     requires transitive javafx.controls;
+    requires java.desktop;
+    requires jdk.httpserver;
+    requires jdk.jfr;
+    requires jdk.management;
     exports view;
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the work of accepting a connection: taking a
+ * board and starting the session, not the wait for the client to connect.
+ */
+@Name("concentration.Accept")
+@Label("Accept")
+@Category({"Concentration", "Server"})
+@Description("Taking a board and starting the session of a new connection")
+@StackTrace(false)
+final class AcceptEvent extends jdk.jfr.Event {
+    @Label("Client Id")
+    int clientId;
+
+    @Label("Game Id")
+    @Description("The seed of the board")
+    long gameId;
+
+    @Label("Remote Address")
+    String remoteAddress;
+}
@@ -0,0 +1,60 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import common.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The admin endpoint: a small HTTP server on the loopback address, apart
+ * from the game port, that answers every GET with a scrape of the
+ * {@link ServerMetrics}.  It runs on a single daemon thread of its own, so
+ * scraping never touches the threads that serve the games.
+ */
+public class AdminServer {
+    private final HttpServer http;
+
+    /**
+     * Bind the admin port.
+     *
+     * @param portNumber the port, on the loopback address only
+     * @param metrics what to serve
+     * @throws IOException if the port cannot be bound
+     */
+    public AdminServer(int portNumber, ServerMetrics metrics) throws IOException {
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), portNumber), 0);
+        http.createContext("/", exchange -> scrape(exchange, metrics));
+    }
+
+    /**
+     * Start answering on a daemon thread.
+     */
+    public void start() {
+        Thread thread = Thread.ofPlatform().name("concentration-admin").daemon().unstarted(http::start);
+        // the server's dispatcher thread inherits daemon status from this one
+        thread.start();
+        Log.info("Admin endpoint on http://%s:%d/metrics", http.getAddress().getHostString(),
+                http.getAddress().getPort());
+    }
+
+    private static void scrape(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                metrics.scrape(new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8)));
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for building and shuffling a board.  Boards are
+ * usually dealt before any client is waiting for them, so the event has no
+ * client id; the game id ties it to the session that plays the board.
+ */
+@Name("concentration.BoardDeal")
+@Label("Board Deal")
+@Category({"Concentration", "Server"})
+@Description("Building and shuffling a board")
+@StackTrace(false)
+final class BoardDealEvent extends jdk.jfr.Event {
+    @Label("Game Id")
+    @Description("The seed of the board")
+    long gameId;
+
+    @Label("Dimension")
+    int dimension;
+
+    @Label("Board Kind")
+    String kind;
+
+    @Label("Pooled")
+    @Description("Dealt ahead by a pool thread rather than for a waiting connection")
+    boolean pooled;
+}
@@ -0,0 +1,168 @@
+package server;
+
+import common.ConcentrationException;
+import common.Log;
+import game.BoardKind;
+import game.GameBoard;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boards dealt ahead of time, so accepting a connection only takes a board
+ * instead of building and shuffling one.  Each dimension has a bounded
+ * queue kept full by its own background thread.  When a queue has run dry
+ * the caller waits for the board being built, which takes no longer than
+ * building it itself.
+ * <p>
+ * Every board is dealt from a seed drawn from a {@link SplittableRandom}
+ * stream split off the pool's seed for its dimension, so a pool with a
+ * fixed seed deals the same boards in the same order every run, and any
+ * single game can be dealt again from the seed of its board.
+ */
+public class BoardPool {
+    /**
+     * how often a waiting caller checks whether the filler has failed
+     */
+    private final static long FAILURE_CHECK_MILLIS = 100;
+
+    /**
+     * One dimension's boards and seeds.
+     */
+    private class Dimension implements Runnable {
+        private final int dim;
+        private final SplittableRandom seeds;
+        private final BlockingQueue<GameBoard> boards;
+        /**
+         * why the filler stopped, for a dimension no board can have
+         */
+        private volatile ConcentrationException failure;
+
+        private Dimension(int dim, SplittableRandom seeds) {
+            this.dim = dim;
+            this.seeds = seeds;
+            this.boards = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+        }
+
+        private synchronized long nextSeed() {
+            return seeds.nextLong();
+        }
+
+        /**
+         * Build and shuffle a board from the next seed.
+         */
+        private GameBoard deal() throws ConcentrationException {
+            long seed = nextSeed();
+            BoardDealEvent event = new BoardDealEvent();
+            event.begin();
+            GameBoard board = kind.create(dim, seed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.gameId = seed;
+                event.dimension = dim;
+                event.kind = kind.name();
+                event.pooled = boards != null;
+                event.commit();
+            }
+            return board;
+        }
+
+        private GameBoard take() throws ConcentrationException {
+            if (boards == null) {
+                return deal();
+            }
+            try {
+                GameBoard board;
+                while ((board = boards.poll(FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                }
+                return board;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConcentrationException(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    boards.put(deal());
+                }
+            } catch (ConcentrationException e) {
+                Log.warn("Board pool stopped: %s", e.getMessage());
+                failure = e;
+            } catch (InterruptedException e) {
+                // the pool is being shut down
+            }
+        }
+    }
+
+    private final BoardKind kind;
+    private final int capacity;
+    /**
+     * split once per dimension, in the order the dimensions are first used
+     */
+    private final SplittableRandom seeds;
+    private final Map<Integer, Dimension> dimensions;
+
+    /**
+     * Create an empty pool.
+     *
+     * @param kind the kind of board to deal
+     * @param capacity the most boards kept ready per dimension, 0 to build
+     *                 every board when it is taken
+     * @param seed the seed of all the deals
+     */
+    public BoardPool(BoardKind kind, int capacity, long seed) {
+        this.kind = kind;
+        this.capacity = capacity;
+        this.seeds = new SplittableRandom(seed);
+        this.dimensions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Start dealing boards of a dimension in the background, ahead of the
+     * first {@link #take(int)}.
+     *
+     * @param dim the square dimension
+     */
+    public void prepare(int dim) {
+        dimension(dim);
+    }
+
+    /**
+     * Take a board, waiting for one if none is ready.
+     *
+     * @param dim the square dimension
+     * @return a fresh board
+     * @throws ConcentrationException if the dimension is illegal
+     */
+    public GameBoard take(int dim) throws ConcentrationException {
+        return dimension(dim).take();
+    }
+
+    private Dimension dimension(int dim) {
+        return dimensions.computeIfAbsent(dim, this::start);
+    }
+
+    private Dimension start(int dim) {
+        SplittableRandom split;
+        synchronized (seeds) {
+            split = seeds.split();
+        }
+        Dimension dimension = new Dimension(dim, split);
+        if (capacity > 0) {
+            Thread filler = new Thread(dimension, "concentration-boards-" + dim);
+            filler.setDaemon(true);
+            filler.start();
+        }
+        return dimension;
+    }
+}
@@ -0,0 +1,187 @@
+package server;
+
+import common.Log;
+import common.TextCodec;
+import common.Transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Task for Server-Client operations.  Plays one game over a blocking
+ * transport, a socket or an in-memory pipe, so it can run on a platform
+ * thread or on a virtual thread.  The task holds no monitors while it
+ * waits on the transport, so a virtual thread running it never pins its
+ * carrier.
+ *
+ * Mismatch responses are written by the shared timer once their delay has
+ * passed, so the task goes straight back to reading.  Any response to a
+ * later request waits until the delayed one has been written.  The room of
+ * a shared game writes through the same lock from its own thread.
+ */
+public class ConcentrationClientServerTask implements Runnable, ConcentrationSession.Output {
+    private Transport transport;
+    private ConcentrationSession session;
+    private int clientId;
+    private HashedWheelTimer timer;
+    private ServerMetrics metrics;
+
+    /**
+     * guards the output, which the timer and the task both write to
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * signalled once the delayed response has been written
+     */
+    private final Condition delayedSent = writeLock.newCondition();
+    /**
+     * the response waiting for its delay to pass
+     */
+    private final ByteBuffer delayed = ByteBuffer.allocate(256);
+    /**
+     * is a delayed response pending?
+     */
+    private boolean pending;
+
+    /**
+     * Constructs task variables
+     * @param transport the connection to the client, closed by the task
+     * @param session the game to play over the connection
+     * @param timer the timer that sends delayed responses
+     * @param metrics where to count the session
+     */
+    public ConcentrationClientServerTask(Transport transport, ConcentrationSession session, HashedWheelTimer timer,
+                                         ServerMetrics metrics) {
+        this.transport = transport;
+        this.session = session;
+        this.clientId = session.getClientId();
+        this.timer = timer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Client Task
+     * Handles responses and communication
+     */
+    @Override
+    public void run() {
+        metrics.sessionOpened();
+        try (Transport connection = transport) {
+            Log.info("Client #%d: Client %d connected: %s", clientId, clientId, connection);
+            session.open(this);
+            ByteBuffer input = ByteBuffer.allocate(TextCodec.MAX_LINE);
+            while (true) {
+                input.flip();
+                while (session.handleNext(input, this)) {
+                    // keep going until the buffer holds no complete request
+                }
+                input.compact();
+                if (session.isClosed()) {
+                    break;
+                }
+                if (connection.read(input) < 0) {
+                    Log.info("Client #%d: Client disconnected", clientId);
+                    break;
+                }
+            }
+            awaitDelayed();
+        } catch (IOException | UncheckedIOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.IO);
+        } finally {
+            session.close();
+            metrics.sessionClosed();
+        }
+    }
+
+    /**
+     * Write one response, after any delayed response still pending.
+     *
+     * @param message the encoded response
+     */
+    @Override
+    public void send(ByteBuffer message) {
+        writeLock.lock();
+        try {
+            awaitDelayed();
+            write(message, false);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Have the timer write the response once the delay has passed.
+     *
+     * @param message the encoded response
+     * @param delayMillis how long to wait before sending
+     */
+    @Override
+    public void sendDelayed(ByteBuffer message, long delayMillis) {
+        writeLock.lock();
+        try {
+            awaitDelayed();
+            delayed.clear();
+            delayed.put(message).flip();
+            pending = true;
+        } finally {
+            writeLock.unlock();
+        }
+        timer.schedule(this::sendPending, delayMillis);
+    }
+
+    /**
+     * Timer callback: write the delayed response.
+     */
+    private void sendPending() {
+        writeLock.lock();
+        try {
+            if (pending) {
+                write(delayed, true);
+            }
+        } catch (UncheckedIOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.IO);
+        } finally {
+            pending = false;
+            delayedSent.signalAll();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Park until no delayed response is pending.
+     */
+    private void awaitDelayed() {
+        writeLock.lock();
+        try {
+            while (pending) {
+                delayedSent.awaitUninterruptibly();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write(ByteBuffer message, boolean delayed) {
+        ResponseWriteEvent event = new ResponseWriteEvent();
+        event.begin();
+        int bytes = message.remaining();
+        try {
+            transport.write(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.clientId = clientId;
+            event.gameId = session.getGameId();
+            event.bytes = bytes;
+            event.delayed = delayed;
+            event.commit();
+        }
+    }
+}
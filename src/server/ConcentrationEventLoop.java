@@ -0,0 +1,135 @@
+package server;
+
+import common.Log;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single threaded event loop that serves many connections with one
+ * selector.  Connections are handed over from the accepting thread and
+ * stay on this loop until they are closed.
+ */
+class ConcentrationEventLoop implements Runnable {
+    private final Selector selector;
+    /**
+     * work handed over by other threads, run on the loop thread
+     */
+    private final Queue<Runnable> tasks;
+    /**
+     * the timer shared by all loops of the server
+     */
+    private final HashedWheelTimer timer;
+    /**
+     * the metrics shared by all loops of the server
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * Create an event loop with its own selector.
+     *
+     * @param timer the timer shared by all loops of the server
+     * @param metrics the metrics shared by all loops of the server
+     * @throws IOException if the selector cannot be opened
+     */
+    ConcentrationEventLoop(HashedWheelTimer timer, ServerMetrics metrics) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.timer = timer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Hand a new client over to this loop.  Safe to call from any thread.
+     *
+     * @param channel the accepted client channel
+     * @param session the game to play over the channel
+     */
+    void register(SocketChannel channel, ConcentrationSession session) {
+        NioConnection connection = new NioConnection(this, channel, session, metrics);
+        execute(() -> open(connection));
+    }
+
+    /**
+     * Run a task on the loop thread.  Safe to call from any thread.
+     *
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Run a task on the loop thread once the delay has passed.
+     *
+     * @param task the task
+     * @param delayMillis the delay
+     */
+    void schedule(Runnable task, long delayMillis) {
+        timer.schedule(() -> execute(task), delayMillis);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                Log.warn("Unexpected error: %s", e.getMessage());
+                return;
+            }
+            runTasks();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                NioConnection connection = (NioConnection) key.attachment();
+                try {
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                } catch (RuntimeException e) {
+                    connection.fail(e);
+                }
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // the other connections of the loop are still served
+                Log.error("Unexpected error: %s", e);
+            }
+        }
+    }
+
+    private void open(NioConnection connection) {
+        try {
+            SocketChannel channel = connection.getChannel();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connection.open(channel.register(selector, SelectionKey.OP_READ, connection));
+        } catch (ClosedChannelException e) {
+            connection.close();
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.IO);
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package server;
+
+import common.ConcentrationException;
+import common.Log;
+import game.BoardKind;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking server.  One thread accepts connections and hands them out
+ * round robin to a small fixed set of event loops, so the number of threads
+ * no longer grows with the number of connected players.  The protocol is
+ * the same as the thread per connection server.
+ */
+public class ConcentrationNioServer {
+    private final int portNumber;
+    private final int dimension;
+    private final BoardKind boardKind;
+    private final long seed;
+    private final BoardPool boards;
+    private final int roomSize;
+    private final RoomLobby lobby;
+    private final ServerMetrics metrics;
+    private final ConcentrationEventLoop[] loops;
+    private int clientId = 0;
+
+    /**
+     * Create the server.
+     *
+     * @param options the server settings, including the number of event
+     *                loops, usually one per core
+     * @throws IOException if a selector cannot be opened
+     */
+    public ConcentrationNioServer(ServerOptions options) throws IOException {
+        this.portNumber = options.getPortNumber();
+        this.dimension = options.getDimension();
+        this.boardKind = options.getBoardKind();
+        this.seed = options.getSeed();
+        this.boards = options.newBoardPool();
+        this.roomSize = options.getRoomSize();
+        this.metrics = options.newMetrics();
+        HashedWheelTimer timer = ConcentrationServer.newLoopTimer();
+        this.lobby = new RoomLobby(options, boards, timer, metrics, options.newSpectatorServer(metrics));
+        this.loops = new ConcentrationEventLoop[options.getLoops()];
+        for (int i = 0; i < loops.length; ++i) {
+            this.loops[i] = new ConcentrationEventLoop(timer, metrics);
+        }
+    }
+
+    /**
+     * Start the event loops and accept connections forever.
+     */
+    public void run() {
+        for (int i = 0; i < loops.length; ++i) {
+            Thread thread = new Thread(loops[i], "concentration-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        boards.prepare(dimension);
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber), ConcentrationServer.ACCEPT_BACKLOG);
+            Log.info("Concentration NIO server starting on port %d, DIM=%d, loops=%d, board=%s, seed=%d, room=%d",
+                    portNumber, dimension, loops.length, boardKind, seed, roomSize);
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                AcceptEvent event = new AcceptEvent();
+                event.begin();
+                metrics.accepted();
+                try {
+                    ++clientId;
+                    ConcentrationSession session = lobby.newSession(clientId);
+                    loops[clientId % loops.length].register(channel, session);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.clientId = clientId;
+                        event.gameId = session.getGameId();
+                        event.remoteAddress = String.valueOf(channel.socket().getRemoteSocketAddress());
+                        event.commit();
+                    }
+                } catch (ConcentrationException e) {
+                    Log.warn("Unexpected error: %s", e.getMessage());
+                    metrics.error(ServerMetrics.ErrorType.BOARD);
+                    close(channel);
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Could not listen on port %d", portNumber);
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Close the channel of a client that could not be served.  A failure
+     * is only logged, so that one bad client never stops the server.
+     */
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package server;
+
+import common.BinaryCodec;
+import common.BinaryProtocol;
+import common.ConcentrationException;
+import common.ConcentrationMessage;
+import common.ConcentrationProtocol;
+import common.Log;
+import common.TextCodec;
+import game.GameBoard;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * A game shared by 2 to 8 players who take turns on one board.  A player
+ * keeps the turn while they find pairs and passes it on a mismatch.  Every
+ * CARD, MATCH and MISMATCH goes to all the players, followed by the new
+ * SCORE after a match and the new TURN after a mismatch.
+ * <p>
+ * The room is its own single writer: everything that touches its state
+ * runs as a task on its {@link SerialExecutor}, whichever connection it
+ * came from, so the board needs no lock and rooms never wait for each
+ * other.  The only thread safe methods are {@link #join}, {@link #request}
+ * and {@link #leave}, which just queue a task.
+ */
+class ConcentrationRoom {
+    /**
+     * the fewest players of a shared room
+     */
+    final static int MIN_PLAYERS = 2;
+    /**
+     * the most players of a shared room
+     */
+    final static int MAX_PLAYERS = 8;
+
+    /**
+     * One seat of the room.
+     */
+    private static class Player {
+        private final ConcentrationSession session;
+        private final ConcentrationSession.Sender out;
+        private boolean present;
+        /**
+         * has the player switched to the binary protocol?
+         */
+        private boolean binary;
+        private int matches;
+
+        private Player(ConcentrationSession session, ConcentrationSession.Sender out) {
+            this.session = session;
+            this.out = out;
+            this.present = true;
+        }
+    }
+
+    private final int roomId;
+    private final GameBoard board;
+    private final long mismatchDelayMillis;
+    private final HashedWheelTimer timer;
+    private final ServerMetrics metrics;
+    private final SpectatorServer spectators;
+    private final SerialExecutor executor;
+
+    /*
+     * STATE, TOUCHED ONLY BY THE ROOM'S TASKS
+     */
+
+    private final Player[] players;
+    private int joined;
+    private boolean started;
+    private boolean over;
+    /**
+     * the seat of the player to reveal next
+     */
+    private int turn;
+    /**
+     * is a mismatch waiting for its delay?  Nobody has the turn meanwhile
+     */
+    private boolean mismatchPending;
+    /**
+     * every message is encoded once per protocol into these, then sent to
+     * each player in the protocol it speaks
+     */
+    private final ByteBuffer text;
+    private final ByteBuffer binary;
+    /**
+     * the updates for the spectators, null if the room cannot be watched
+     */
+    private GameFeed feed;
+
+    /**
+     * Create a room waiting for its players.
+     *
+     * @param roomId the unique ID of the room, for messages
+     * @param size how many players the room waits for
+     * @param board the board the players share
+     * @param mismatchDelayMillis how long to wait before reporting a mismatch
+     * @param timer the timer that delays mismatches
+     * @param metrics where to record the handling of the requests
+     * @param spectators where the game can be watched, null if it cannot
+     * @param executor the shared executor the room's tasks run on
+     */
+    ConcentrationRoom(int roomId, int size, GameBoard board, long mismatchDelayMillis, HashedWheelTimer timer,
+                      ServerMetrics metrics, SpectatorServer spectators, Executor executor) {
+        this.roomId = roomId;
+        this.board = board;
+        this.mismatchDelayMillis = mismatchDelayMillis;
+        this.timer = timer;
+        this.metrics = metrics;
+        this.spectators = spectators;
+        this.executor = new SerialExecutor(executor);
+        this.players = new Player[size];
+        this.text = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.binary = ByteBuffer.allocate(TextCodec.MAX_LINE);
+    }
+
+    /**
+     * Get the number of seats.
+     *
+     * @return the number of players the room waits for
+     */
+    int getSize() {
+        return players.length;
+    }
+
+    /**
+     * Get the id of the game, the seed its board was dealt from.
+     *
+     * @return the game ID
+     */
+    long getGameId() {
+        return board.getSeed();
+    }
+
+    /**
+     * Take a seat.  The game starts once every seat is taken.
+     *
+     * @param seat the seat, given out by the {@link RoomLobby}
+     * @param session the session of the player
+     * @param out where to send the player's messages; called from the
+     *            room's tasks, so it must be safe to call from any thread
+     */
+    void join(int seat, ConcentrationSession session, ConcentrationSession.Sender out) {
+        executor.execute(() -> {
+            players[seat] = new Player(session, out);
+            if (++joined == players.length) {
+                start();
+            }
+        });
+    }
+
+    /**
+     * Handle a request of a player.
+     *
+     * @param seat the seat of the player
+     * @param type the request, REVEAL, REVEAL_PAIR, INVALID_REVEAL or BINARY
+     * @param row1 the row of the card to reveal
+     * @param col1 the column of the card to reveal
+     * @param row2 the row of the second card of a REVEAL_PAIR
+     * @param col2 the column of the second card of a REVEAL_PAIR
+     */
+    void request(int seat, ConcentrationMessage.Type type, int row1, int col1, int row2, int col2) {
+        executor.execute(() -> {
+            Player player = players[seat];
+            if (player == null || !player.present || over) {
+                return;
+            }
+            switch (type) {
+                case REVEAL:
+                    reveal(seat, row1, col1);
+                    break;
+                case REVEAL_PAIR:
+                    // the second card follows the first without a round trip to the player
+                    if (reveal(seat, row1, col1)) {
+                        reveal(seat, row2, col2);
+                    }
+                    break;
+                case INVALID_REVEAL:
+                    metrics.error(ServerMetrics.ErrorType.INVALID_COORDINATE);
+                    sendError(player, "Invalid coordinate");
+                    break;
+                default:
+                    // switched between two messages of the room, so every message before is text
+                    player.binary = true;
+                    text.clear();
+                    TextCodec.putLine(text, BinaryProtocol.BINARY);
+                    send(player, text.flip());
+            }
+        });
+    }
+
+    /**
+     * A player has gone.  The others play on; the turn moves on if it was
+     * theirs.
+     *
+     * @param seat the seat of the player
+     */
+    void leave(int seat) {
+        executor.execute(() -> {
+            Player player = players[seat];
+            if (player != null) {
+                gone(seat);
+            }
+        });
+    }
+
+    /*
+     * THE ROOM'S TASKS
+     */
+
+    private void start() {
+        Log.info("Room #%d: %d players, board seed %d", roomId, players.length, board.getSeed());
+        started = true;
+        if (spectators != null) {
+            feed = spectators.open(board.getSeed(), board.getDIM(), null);
+        }
+        for (int seat = 0; seat < players.length; ++seat) {
+            Player player = players[seat];
+            if (!player.present) {
+                continue;
+            }
+            text.clear();
+            TextCodec.putBoardDim(text, board.getDIM());
+            // a player may have switched to binary while waiting for the others
+            if (player.binary) {
+                BinaryCodec.putRoom(text, seat, players.length);
+            } else {
+                TextCodec.putRoom(text, seat, players.length);
+            }
+            send(player, text.flip());
+        }
+        turn = -1;
+        nextTurn();
+    }
+
+    /**
+     * Turn over a card for the player who has the turn.
+     *
+     * @return whether the card was turned over and the game goes on
+     */
+    private boolean reveal(int seat, int row, int col) {
+        Player player = players[seat];
+        if (!started || seat != turn || mismatchPending) {
+            metrics.error(ServerMetrics.ErrorType.OUT_OF_TURN);
+            sendError(player, "Not your turn");
+            return false;
+        }
+        RevealEvent event = new RevealEvent();
+        event.begin();
+        long start = metrics.start();
+        int outcome = -1;
+        try {
+            int symbol = board.getSymbol(row, col);
+            encodeCard(row, col, symbol);
+            if (feed != null) {
+                feed.revealed(row, col, symbol);
+            }
+            broadcast();
+            metrics.handled(ConcentrationMessage.Type.CARD, start);
+
+            outcome = board.revealCard(row, col);
+            if (outcome == GameBoard.MATCH) {
+                player.matches++;
+                encodeMatch(true, board.getFirstRow(), board.getFirstCol(), row, col);
+                broadcast();
+                metrics.handled(ConcentrationMessage.Type.MATCH, start);
+                text.clear();
+                binary.clear();
+                TextCodec.putScore(text, seat, player.matches);
+                BinaryCodec.putScore(binary, seat, player.matches);
+                broadcast();
+            } else if (outcome == GameBoard.MISMATCH) {
+                int row1 = board.getFirstRow();
+                int col1 = board.getFirstCol();
+                if (mismatchDelayMillis == 0) {
+                    mismatch(row1, col1, row, col);
+                } else {
+                    mismatchPending = true;
+                    timer.schedule(() -> executor.execute(() -> mismatch(row1, col1, row, col)),
+                            mismatchDelayMillis);
+                }
+                metrics.handled(ConcentrationMessage.Type.MISMATCH, start);
+            }
+        } catch (ConcentrationException e) {
+            metrics.error(ServerMetrics.ErrorType.OUT_OF_BOUNDS);
+            sendError(player, "Coordinates out of bounds" + "[" + row + "]" + "[" + col + "]");
+        }
+        if (board.gameOver()) {
+            over = true;
+            text.clear();
+            binary.clear();
+            TextCodec.putGameOver(text);
+            BinaryCodec.putGameOver(binary);
+            broadcast();
+            for (Player each : players) {
+                // after the broadcast, so each connection ends once GAME_OVER is out
+                each.session.finish();
+            }
+            endFeed();
+            metrics.handled(ConcentrationMessage.Type.GAME_OVER, start);
+            metrics.gameCompleted();
+            Log.info("Room #%d: game over", roomId);
+        }
+        metrics.handled(ConcentrationMessage.Type.REVEAL, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.clientId = player.session.getClientId();
+            event.gameId = board.getSeed();
+            event.row = row;
+            event.col = col;
+            event.outcome = RevealEvent.outcome(outcome);
+            event.commit();
+        }
+        return outcome >= 0 && !over;
+    }
+
+    /**
+     * Announce a mismatch, once its delay has passed, and pass the turn.
+     */
+    private void mismatch(int row1, int col1, int row2, int col2) {
+        mismatchPending = false;
+        if (feed != null) {
+            feed.hidden(row1, col1);
+            feed.hidden(row2, col2);
+        }
+        encodeMatch(false, row1, col1, row2, col2);
+        broadcast();
+        nextTurn();
+    }
+
+    /**
+     * Give the turn to the next player still present, and tell everyone.
+     */
+    private void nextTurn() {
+        for (int i = 1; i <= players.length; ++i) {
+            int seat = (turn + i + players.length) % players.length;
+            if (players[seat].present) {
+                turn = seat;
+                text.clear();
+                binary.clear();
+                TextCodec.putTurn(text, seat);
+                BinaryCodec.putTurn(binary, seat);
+                broadcast();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forget a player who has left or whose connection failed.
+     */
+    private void gone(int seat) {
+        Player player = players[seat];
+        if (!player.present) {
+            return;
+        }
+        player.present = false;
+        player.session.finish();
+        if (!anyPresent()) {
+            endFeed();
+        }
+        if (started && !over && seat == turn && !mismatchPending) {
+            nextTurn();
+        }
+    }
+
+    private boolean anyPresent() {
+        for (Player player : players) {
+            if (player != null && player.present) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void endFeed() {
+        if (feed != null) {
+            feed.end();
+            feed = null;
+        }
+    }
+
+    private void encodeCard(int row, int col, int symbol) {
+        text.clear();
+        binary.clear();
+        if (symbol >= ConcentrationProtocol.LETTERS) {
+            TextCodec.putSymbol(text, row, col, symbol);
+            BinaryCodec.putSymbol(binary, row, col, symbol);
+        } else {
+            TextCodec.putCard(text, row, col, (char) ('A' + symbol));
+            BinaryCodec.putCard(binary, row, col, (char) ('A' + symbol));
+        }
+    }
+
+    private void encodeMatch(boolean match, int row1, int col1, int row2, int col2) {
+        text.clear();
+        binary.clear();
+        TextCodec.putMatch(text, match, row1, col1, row2, col2);
+        BinaryCodec.putMatch(binary, match, row1, col1, row2, col2);
+    }
+
+    /**
+     * Send the encoded message to every player present, and to the
+     * spectators.
+     */
+    private void broadcast() {
+        text.flip();
+        binary.flip();
+        if (feed != null) {
+            feed.publish(text);
+        }
+        for (int seat = 0; seat < players.length; ++seat) {
+            Player player = players[seat];
+            if (player.present) {
+                send(player, (player.binary ? binary : text).position(0));
+            }
+        }
+    }
+
+    private void sendError(Player player, String message) {
+        text.clear();
+        if (player.binary) {
+            BinaryCodec.putError(text, message);
+        } else {
+            TextCodec.putError(text, message);
+        }
+        send(player, text.flip());
+    }
+
+    private void send(Player player, ByteBuffer message) {
+        try {
+            player.out.send(message);
+        } catch (RuntimeException e) {
+            Log.warn("Room #%d: Unexpected error: %s", roomId, e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.IO);
+            for (int seat = 0; seat < players.length; ++seat) {
+                if (players[seat] == player) {
+                    gone(seat);
+                }
+            }
+        }
+    }
+}
@@ -1,50 +1,143 @@
 package server;
 
 import common.ConcentrationException;
+import common.Log;
+import common.SocketTransport;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 /**
  * Server Class
  *
  *
  */
 public class ConcentrationServer {
+    /**
+     * tick of the mismatch delay timer
+     */
+    private final static long TIMER_TICK_MILLIS = 10;
+    /**
+     * buckets of the mismatch delay timer, enough for a few seconds per round
+     */
+    private final static int TIMER_WHEEL_SIZE = 512;
+    /**
+     * connections the kernel may hold for accept; the default of 50 drops
+     * handshakes when many players connect at once.  Capped by somaxconn.
+     */
+    final static int ACCEPT_BACKLOG = 4096;
+
     private int clientId = 0;
 
     /**
      * Run method
-     * Creates socket and initialize server-client thread
-     * @param portNumber of server-client thread
-     * @param dimension of gameboard
+     * Creates socket and starts a server-client task per connection
+     * @param options the server settings
+     * @param threads creates the thread each server-client task runs on
      */
-    private void run(int portNumber, int dimension) {
-        try (ServerSocket serverSocket = new ServerSocket(portNumber)) {
-            System.out.println(String.format("Concentration server starting on port %d, DIM=%d", portNumber, dimension));
+    private void run(ServerOptions options, ThreadFactory threads) {
+        int portNumber = options.getPortNumber();
+        int dimension = options.getDimension();
+        HashedWheelTimer timer = newTaskTimer();
+        ServerMetrics metrics = options.newMetrics();
+        BoardPool boards = options.newBoardPool();
+        boards.prepare(dimension);
+        RoomLobby lobby = new RoomLobby(options, boards, timer, metrics, options.newSpectatorServer(metrics));
+        try (ServerSocket serverSocket = new ServerSocket(portNumber, ACCEPT_BACKLOG)) {
+            Log.info("Concentration server starting on port %d, DIM=%d, mode=%s, board=%s, seed=%d, room=%d",
+                    portNumber, dimension, options.getMode(), options.getBoardKind(), options.getSeed(),
+                    options.getRoomSize());
             while (true) {
+                Socket socket = serverSocket.accept();
+                AcceptEvent event = new AcceptEvent();
+                event.begin();
+                metrics.accepted();
                 try {
-                    new ConcentrationClientServerThread(serverSocket.accept(), dimension, ++clientId).start();
+                    ConcentrationSession session = lobby.newSession(++clientId);
+                    threads.newThread(new ConcentrationClientServerTask(new SocketTransport(socket), session, timer,
+                            metrics)).start();
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.clientId = clientId;
+                        event.gameId = session.getGameId();
+                        event.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+                        event.commit();
+                    }
                 } catch (ConcentrationException e) {
-                    System.out.println("Unexpected error: " + e.getMessage());
+                    Log.warn("Unexpected error: %s", e.getMessage());
+                    metrics.error(ServerMetrics.ErrorType.BOARD);
+                    close(socket);
+                } catch (IOException e) {
+                    Log.warn("Unexpected error: %s", e.getMessage());
+                    metrics.error(ServerMetrics.ErrorType.IO);
+                    close(socket);
                 }
             }
         } catch (IOException e) {
-            System.err.println("Could not listen on port " + portNumber);
+            Log.error("Could not listen on port %d", portNumber);
             System.exit(-1);
         }
     }
+
+    /**
+     * Close the socket of a client that could not be served.  A failure is
+     * only logged, so that one bad client never stops the server.
+     */
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Create the timer shared by the sessions of {@link ConcentrationClientServerTask}s.
+     * Delayed responses are written from short-lived virtual threads, so a
+     * slow client can never stall the timer.
+     *
+     * @return the timer
+     */
+    public static HashedWheelTimer newTaskTimer() {
+        return new HashedWheelTimer(TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Create the timer shared by the sessions of an event loop server.  The
+     * expired tasks only hand work to a loop, so they run on the timer thread.
+     *
+     * @return the timer
+     */
+    static HashedWheelTimer newLoopTimer() {
+        return new HashedWheelTimer(TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE, Runnable::run);
+    }
+
     /**
      * Main class that assigns arguments and calls runs method.
+     * See {@link ServerOptions#USAGE} for the arguments.
      */
-    public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Usage: java ConcentrationServer <port number> <board dimension>");
+    public static void main(String[] args) throws IOException {
+        ServerOptions options;
+        try {
+            options = ServerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(ServerOptions.USAGE);
             return;
         }
-        int portNumber = Integer.parseInt(args[0]);
-        int dimension = Integer.parseInt(args[1]);
 
-        ConcentrationServer server = new ConcentrationServer();
-        server.run(portNumber, dimension);
+        Log.setLevel(options.getLogLevel());
+        switch (options.getMode()) {
+            case NIO:
+                new ConcentrationNioServer(options).run();
+                break;
+            case VIRTUAL:
+                new ConcentrationServer().run(options, Thread.ofVirtual().name("client-", 1).factory());
+                break;
+            default:
+                new ConcentrationServer().run(options, Thread.ofPlatform().name("client-", 1).factory());
+        }
     }
 }
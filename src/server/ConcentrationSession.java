@@ -0,0 +1,795 @@
+package server;
+
+import common.BinaryCodec;
+import common.BinaryProtocol;
+import common.ConcentrationException;
+import common.ConcentrationMessage;
+import common.ConcentrationProtocol;
+import common.Log;
+import common.TextCodec;
+import game.GameBoard;
+import history.HistoryWriter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The server side state machine for a single game.  A session owns the
+ * board of one client and turns each request into the response messages
+ * of the protocol, in text or, once the client has asked for it, in the
+ * {@link BinaryProtocol}.  It knows nothing about sockets or threads, so it
+ * can be driven by a blocking thread or by a non-blocking event loop.
+ * <p>
+ * A session seated in a {@link ConcentrationRoom} owns no board: it
+ * decodes the requests and hands them to the room, which answers through
+ * the session's output from the room's own thread.
+ */
+public class ConcentrationSession {
+    /**
+     * how long the client gets to look at two mismatched cards by default
+     */
+    public final static long MISMATCH_DELAY_MILLIS = 1000;
+
+    /**
+     * The states a session moves through.
+     */
+    public enum State {
+        /** created, the board dimension has not been sent yet */
+        NEW,
+        /** waiting for reveal requests */
+        PLAYING,
+        /** the game is over or the client misbehaved */
+        CLOSED
+    }
+
+    /**
+     * Where a response goes right away.  A response is handed over as the
+     * bytes between the buffer's position and limit; the sender reuses the
+     * buffer afterwards, so the receiver must copy them.  A room only ever
+     * sends this way, as it delays on its own timer.
+     */
+    public interface Sender {
+        /**
+         * Send a response to the client right away.
+         *
+         * @param message the encoded response
+         */
+        void send(ByteBuffer message);
+    }
+
+    /**
+     * Where the session of a game of its own writes its responses.
+     */
+    public interface Output extends Sender {
+        /**
+         * Send a response to the client once the delay has passed,
+         * without holding up the caller.  Responses sent after it must
+         * still reach the client after it.
+         *
+         * @param message the encoded response
+         * @param delayMillis how long to wait before sending
+         */
+        void sendDelayed(ByteBuffer message, long delayMillis);
+    }
+
+    /**
+     * the board of this game, null for a session in a room; replaced by
+     * the board of a resumed game
+     */
+    private GameBoard board;
+    /**
+     * the shared game the session is seated in, null for a game of its own
+     */
+    private final ConcentrationRoom room;
+    /**
+     * the seat in the room
+     */
+    private final int seat;
+    /**
+     * the unique ID of the client
+     */
+    private final int clientId;
+    /**
+     * how long to wait before reporting a mismatch, 0 for no wait
+     */
+    private final long mismatchDelayMillis;
+    /**
+     * where the handling is measured
+     */
+    private final ServerMetrics metrics;
+    /**
+     * where the game can be watched, null if it cannot
+     */
+    private final SpectatorServer spectators;
+    /**
+     * where the game is kept if the connection is lost, null if it is not
+     */
+    private final SessionRegistry sessions;
+    /**
+     * where the game is logged to survive a restart, null if it is not
+     */
+    private final GameJournal journal;
+    /**
+     * where the game is recorded once complete, null if it is not
+     */
+    private final HistoryWriter history;
+    /**
+     * how the game has gone so far, null if it is not recorded
+     */
+    private GameTally tally;
+    /**
+     * the token the client can resume the game with, null if it cannot
+     */
+    private String token;
+    /**
+     * the updates for the spectators, null until the game starts
+     */
+    private GameFeed feed;
+    /**
+     * the buffer each update for the spectators is encoded into, in text
+     */
+    private ByteBuffer watched;
+    /**
+     * the current state; a room may end the session from its own thread
+     */
+    private volatile State state;
+    /**
+     * has the client switched to the binary protocol?
+     */
+    private boolean binary;
+    /**
+     * the buffer each response is encoded into
+     */
+    private final ByteBuffer response;
+    /**
+     * decodes the text requests
+     */
+    private final TextCodec textCodec;
+    /**
+     * each request is decoded into this message
+     */
+    private final ConcentrationMessage request;
+    /**
+     * the responses to a REVEAL_PAIR, gathered to be sent at once; created
+     * by the first one
+     */
+    private ByteBuffer pair;
+    /**
+     * the output that gathers the responses to a REVEAL_PAIR
+     */
+    private final Output pairOutput = new Output() {
+        @Override
+        public void send(ByteBuffer message) {
+            pair.put(message);
+        }
+
+        @Override
+        public void sendDelayed(ByteBuffer message, long delayMillis) {
+            // the client has both cards in hand already, so it is not held back
+            pair.put(message);
+        }
+    };
+
+    /**
+     * Create a new session with the default mismatch delay.
+     *
+     * @param board the board of the game
+     * @param clientId the unique ID of the client
+     */
+    public ConcentrationSession(GameBoard board, int clientId) {
+        this(board, clientId, MISMATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * Create a new session.
+     *
+     * @param board the board of the game
+     * @param clientId the unique ID of the client
+     * @param mismatchDelayMillis how long to wait before reporting a
+     *                            mismatch, 0 for no wait
+     */
+    public ConcentrationSession(GameBoard board, int clientId, long mismatchDelayMillis) {
+        this(board, clientId, mismatchDelayMillis, ServerMetrics.NONE);
+    }
+
+    /**
+     * Create a new session that records what it does.
+     *
+     * @param board the board of the game
+     * @param clientId the unique ID of the client
+     * @param mismatchDelayMillis how long to wait before reporting a
+     *                            mismatch, 0 for no wait
+     * @param metrics where to record the handling of the requests
+     */
+    public ConcentrationSession(GameBoard board, int clientId, long mismatchDelayMillis, ServerMetrics metrics) {
+        this(board, clientId, mismatchDelayMillis, metrics, null);
+    }
+
+    /**
+     * Create a new session that spectators can watch.
+     *
+     * @param board the board of the game
+     * @param clientId the unique ID of the client
+     * @param mismatchDelayMillis how long to wait before reporting a
+     *                            mismatch, 0 for no wait
+     * @param metrics where to record the handling of the requests
+     * @param spectators where the game can be watched, null if it cannot
+     */
+    ConcentrationSession(GameBoard board, int clientId, long mismatchDelayMillis, ServerMetrics metrics,
+                         SpectatorServer spectators) {
+        this(board, clientId, mismatchDelayMillis, metrics, spectators, null, null);
+    }
+
+    /**
+     * Create a new session whose game can be resumed over a new connection
+     * if this one is lost.
+     *
+     * @param board the board of the game
+     * @param clientId the unique ID of the client
+     * @param mismatchDelayMillis how long to wait before reporting a
+     *                            mismatch, 0 for no wait
+     * @param metrics where to record the handling of the requests
+     * @param spectators where the game can be watched, null if it cannot
+     * @param sessions where the game is kept if the connection is lost,
+     *                 null if it is not
+     * @param history where the game is recorded once complete, null if it is not
+     */
+    ConcentrationSession(GameBoard board, int clientId, long mismatchDelayMillis, ServerMetrics metrics,
+                         SpectatorServer spectators, SessionRegistry sessions, HistoryWriter history) {
+        this(board, null, 0, clientId, mismatchDelayMillis, metrics, spectators, sessions, history);
+    }
+
+    /**
+     * Create a session seated in a shared room.
+     *
+     * @param room the room
+     * @param seat the seat reserved in the room
+     * @param clientId the unique ID of the client
+     * @param metrics where to record the errors in the requests
+     */
+    ConcentrationSession(ConcentrationRoom room, int seat, int clientId, ServerMetrics metrics) {
+        this(null, room, seat, clientId, 0, metrics, null, null, null);
+    }
+
+    private ConcentrationSession(GameBoard board, ConcentrationRoom room, int seat, int clientId,
+                                 long mismatchDelayMillis, ServerMetrics metrics, SpectatorServer spectators,
+                                 SessionRegistry sessions, HistoryWriter history) {
+        this.board = board;
+        this.sessions = sessions;
+        this.journal = sessions != null ? sessions.getJournal() : null;
+        this.history = history;
+        this.room = room;
+        this.seat = seat;
+        this.clientId = clientId;
+        this.mismatchDelayMillis = mismatchDelayMillis;
+        this.metrics = metrics;
+        this.spectators = spectators;
+        this.state = State.NEW;
+        this.binary = false;
+        this.response = ByteBuffer.allocate(512);
+        this.textCodec = new TextCodec();
+        this.request = new ConcentrationMessage();
+    }
+
+    /**
+     * Get the unique ID of the client.
+     *
+     * @return the client ID
+     */
+    public int getClientId() {
+        return this.clientId;
+    }
+
+    /**
+     * Get the id of the game, the seed its board was dealt from.
+     *
+     * @return the game ID
+     */
+    public long getGameId() {
+        return room != null ? room.getGameId() : board.getSeed();
+    }
+
+    /**
+     * Get the current state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * Is the session finished?
+     *
+     * @return true once the game is over or the client misbehaved
+     */
+    public boolean isClosed() {
+        return this.state == State.CLOSED;
+    }
+
+    /**
+     * Has the client switched to the binary protocol?  From then on the
+     * requests arrive as binary messages.
+     *
+     * @return whether the connection speaks binary
+     */
+    public boolean isBinary() {
+        return this.binary;
+    }
+
+    /**
+     * Is the session seated in a shared room?  Its output is then also
+     * written from the room's thread.
+     *
+     * @return whether the session plays in a room
+     */
+    public boolean isShared() {
+        return this.room != null;
+    }
+
+    /**
+     * Start the game by sending the board dimension.  A session in a room
+     * takes its seat instead, see {@link #seat(Sender)}.
+     *
+     * @param out where to send the response; for a session in a room it
+     *            must be safe to call from any thread
+     */
+    public void open(Output out) {
+        if (room != null) {
+            seat(out);
+            return;
+        }
+        if (this.state != State.NEW) {
+            return;
+        }
+        response.clear();
+        TextCodec.putBoardDim(response, board.getDIM());
+        out.send(response.flip());
+        if (sessions != null && isResumable(board)) {
+            this.token = sessions.issue();
+            if (journal != null) {
+                journal.started(token, board);
+            }
+            response.clear();
+            TextCodec.putSession(response, token);
+            out.send(response.flip());
+        }
+        Log.info("Client #%d: Client started... board seed %d", clientId, board.getSeed());
+        this.state = State.PLAYING;
+        if (history != null) {
+            this.tally = new GameTally();
+        }
+        openFeed(null);
+    }
+
+    /**
+     * Can the game on a board be resumed?  Its snapshot must fit a line.
+     */
+    private static boolean isResumable(GameBoard board) {
+        int dim = board.getDIM();
+        return dim * dim / 2 <= ConcentrationProtocol.SNAPSHOT_SYMBOLS.length();
+    }
+
+    /**
+     * Start streaming the game to its spectators, if it can be watched.
+     *
+     * @param cards the cards of a resumed game as in a SNAPSHOT, null for a
+     *              new game
+     */
+    private void openFeed(String cards) {
+        if (spectators != null) {
+            this.feed = spectators.open(board.getSeed(), board.getDIM(), cards);
+            this.watched = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        }
+    }
+
+    /**
+     * Take the seat of a session in a room; the room sends the board
+     * dimension once every seat is taken, and delays on its own.
+     *
+     * @param out where the room sends the player's messages; called from
+     *            the room's tasks, so it must be safe to call from any thread
+     */
+    public void seat(Sender out) {
+        if (this.state != State.NEW) {
+            return;
+        }
+        Log.info("Client #%d: Client seated... room seat %d", clientId, seat);
+        this.state = State.PLAYING;
+        room.join(seat, this, out);
+    }
+
+    /**
+     * Handle the next request in the buffer, text or binary depending on
+     * what the connection speaks, if all of it has arrived.
+     *
+     * @param in the bytes received from the client
+     * @param out where to send the responses
+     * @return true if a request was consumed, false if more bytes are needed
+     */
+    public boolean handleNext(ByteBuffer in, Output out) {
+        if (this.state != State.PLAYING) {
+            return false;
+        }
+        try {
+            boolean complete = binary ? BinaryCodec.decode(in, request) : textCodec.decode(in, request);
+            if (!complete) {
+                return false;
+            }
+        } catch (ConcentrationException e) {
+            Log.warn("Client #%d: Unexpected request: %s", clientId, e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.PROTOCOL);
+            this.state = State.CLOSED;
+            close();
+            return true;
+        }
+        handle(request, out);
+        return true;
+    }
+
+    /**
+     * Handle one decoded request from the client.
+     *
+     * @param request the request
+     * @param out where to send the responses
+     */
+    public void handle(ConcentrationMessage request, Output out) {
+        if (this.state != State.PLAYING) {
+            return;
+        }
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            Log.debug("Client #%d: received: %s %d %d", clientId, request.getType(),
+                    request.getRow1(), request.getCol1());
+        }
+        if (room != null) {
+            switch (request.getType()) {
+                case BINARY:
+                    if (binary) {
+                        unexpected(request);
+                        break;
+                    }
+                    // the requests switch now, the room switches the responses in turn
+                    this.binary = true;
+                    room.request(seat, request.getType(), 0, 0, 0, 0);
+                    break;
+                case REVEAL:
+                case REVEAL_PAIR:
+                case INVALID_REVEAL:
+                    room.request(seat, request.getType(), request.getRow1(), request.getCol1(),
+                            request.getRow2(), request.getCol2());
+                    break;
+                default:
+                    unexpected(request);
+            }
+            return;
+        }
+        switch (request.getType()) {
+            case REVEAL:
+                reveal(request.getRow1(), request.getCol1(), out);
+                break;
+            case REVEAL_PAIR:
+                revealPair(request.getRow1(), request.getCol1(), request.getRow2(), request.getCol2(), out);
+                break;
+            case INVALID_REVEAL:
+                metrics.error(ServerMetrics.ErrorType.INVALID_COORDINATE);
+                sendError("Invalid coordinate", out);
+                break;
+            case RESUME:
+                resume(request.getText(), out);
+                break;
+            case BINARY:
+                if (binary) {
+                    unexpected(request);
+                    break;
+                }
+                response.clear();
+                TextCodec.putLine(response, BinaryProtocol.BINARY);
+                out.send(response.flip());
+                this.binary = true;
+                break;
+            default:
+                unexpected(request);
+        }
+    }
+
+    /**
+     * The client sent something other than a request; end the session.
+     */
+    private void unexpected(ConcentrationMessage request) {
+        Log.warn("Client #%d: Unexpected request: %s", clientId, request.getType());
+        metrics.error(ServerMetrics.ErrorType.PROTOCOL);
+        this.state = State.CLOSED;
+        close();
+    }
+
+    /**
+     * Take up the game kept under a token in place of the new game, and
+     * send the client a snapshot of its board.  If no game is kept under
+     * the token, the client is told so and plays the new game.
+     *
+     * @param resumed the token the client presented
+     * @param out where to send the responses
+     */
+    private void resume(String resumed, Output out) {
+        SessionRegistry.Detached kept = sessions != null ? sessions.resume(resumed) : null;
+        if (kept == null) {
+            Log.info("Client #%d: Cannot resume session %s", clientId, resumed);
+            sendError("Unknown session", out);
+            return;
+        }
+        endFeed();
+        if (journal != null && token != null) {
+            // the new game is given up for the resumed one
+            journal.ended(token);
+        }
+        this.board = kept.getBoard();
+        this.token = resumed;
+        // the moves of a game recovered by the journal are not known, so it
+        // is left out of the history
+        this.tally = kept.getTally();
+        Log.info("Client #%d: Client resumed... board seed %d", clientId, board.getSeed());
+        response.clear();
+        String cards = snapshot(board);
+        TextCodec.putSnapshot(response, board.getDIM(), cards);
+        out.send(response.flip());
+        openFeed(cards);
+    }
+
+    /**
+     * Write down the cards of a board as the client sees them, row by row:
+     * the symbol of each card face up, {@link ConcentrationProtocol#SNAPSHOT_HIDDEN}
+     * for each card face down.
+     */
+    private static String snapshot(GameBoard board) {
+        int dim = board.getDIM();
+        StringBuilder cards = new StringBuilder(dim * dim);
+        try {
+            for (int row = 0; row < dim; ++row) {
+                for (int col = 0; col < dim; ++col) {
+                    cards.append(board.isRevealed(row, col)
+                            ? ConcentrationProtocol.SNAPSHOT_SYMBOLS.charAt(board.getSymbol(row, col))
+                            : ConcentrationProtocol.SNAPSHOT_HIDDEN);
+                }
+            }
+        } catch (ConcentrationException e) {
+            // every coordinate is on the board
+            throw new IllegalStateException(e);
+        }
+        return cards.toString();
+    }
+
+    /**
+     * End the session, once the connection is gone or the client
+     * misbehaved.  A session in a room gives up its seat; the others play
+     * on.  A game lost mid-way is kept for the client to resume, if it
+     * can be.
+     */
+    public void close() {
+        if (this.state == State.PLAYING && token != null) {
+            sessions.detach(token, board, tally);
+            Log.info("Client #%d: Client detached... session %s", clientId, token);
+        } else if (journal != null && token != null) {
+            journal.ended(token);
+        }
+        this.state = State.CLOSED;
+        if (room != null) {
+            room.leave(seat);
+        }
+        endFeed();
+    }
+
+    /**
+     * The room has ended the game for this session.
+     */
+    void finish() {
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * Handle a reveal request.
+     *
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param out where to send the responses
+     */
+    public void reveal(int row, int col, Output out) {
+        if (this.state != State.PLAYING || room != null) {
+            return;
+        }
+        timedReveal(row, col, out);
+    }
+
+    /**
+     * Handle a pair reveal request: reveal both cards, and send both CARD
+     * messages and the MATCH or MISMATCH in one write, so a turn costs one
+     * round trip.  The mismatch is not delayed, as the client gets the
+     * cards with it.  The second card is not revealed if the first fails.
+     *
+     * @param row1 the row of the first card
+     * @param col1 the column of the first card
+     * @param row2 the row of the second card
+     * @param col2 the column of the second card
+     * @param out where to send the responses
+     */
+    public void revealPair(int row1, int col1, int row2, int col2, Output out) {
+        if (this.state != State.PLAYING || room != null) {
+            return;
+        }
+        if (pair == null) {
+            pair = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        }
+        pair.clear();
+        if (timedReveal(row1, col1, pairOutput) >= 0 && this.state == State.PLAYING) {
+            timedReveal(row2, col2, pairOutput);
+        }
+        out.send(pair.flip());
+    }
+
+    /**
+     * Reveal the card and send the responses, recording a {@link RevealEvent}.
+     *
+     * @return the outcome from the board, -1 if the card is out of bounds
+     */
+    private int timedReveal(int row, int col, Output out) {
+        RevealEvent event = new RevealEvent();
+        event.begin();
+        int outcome = respond(row, col, out);
+        event.end();
+        if (event.shouldCommit()) {
+            event.clientId = clientId;
+            event.gameId = board.getSeed();
+            event.row = row;
+            event.col = col;
+            event.outcome = RevealEvent.outcome(outcome);
+            event.commit();
+        }
+        return outcome;
+    }
+
+    /**
+     * Reveal the card and send the responses.
+     *
+     * @return the outcome from the board, -1 if the card is out of bounds
+     */
+    private int respond(int row, int col, Output out) {
+        long start = metrics.start();
+        int outcome;
+        try {
+            int symbol = board.getSymbol(row, col);
+            response.clear();
+            if (symbol >= ConcentrationProtocol.LETTERS) {
+                if (binary) {
+                    BinaryCodec.putSymbol(response, row, col, symbol);
+                } else {
+                    TextCodec.putSymbol(response, row, col, symbol);
+                }
+            } else if (binary) {
+                BinaryCodec.putCard(response, row, col, (char) ('A' + symbol));
+            } else {
+                TextCodec.putCard(response, row, col, (char) ('A' + symbol));
+            }
+            out.send(response.flip());
+            metrics.handled(ConcentrationMessage.Type.CARD, start);
+            if (feed != null) {
+                feed.revealed(row, col, symbol);
+            }
+            if (feed != null && feed.isWatched()) {
+                watched.clear();
+                if (symbol >= ConcentrationProtocol.LETTERS) {
+                    TextCodec.putSymbol(watched, row, col, symbol);
+                } else {
+                    TextCodec.putCard(watched, row, col, (char) ('A' + symbol));
+                }
+                feed.publish(watched.flip());
+            }
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                if (symbol >= ConcentrationProtocol.LETTERS) {
+                    Log.debug("Client #%d: sending: " + ConcentrationProtocol.SYMBOL_MSG, clientId, row, col, symbol);
+                } else {
+                    Log.debug("Client #%d: sending: " + ConcentrationProtocol.CARD_MSG, clientId, row, col,
+                            (char) ('A' + symbol));
+                }
+            }
+            outcome = board.revealCard(row, col);
+            if (journal != null && token != null) {
+                journal.revealed(token, row, col);
+            }
+            if (tally != null) {
+                tally.revealed();
+                if (outcome != GameBoard.FIRST) {
+                    tally.turned(outcome == GameBoard.MATCH);
+                }
+            }
+            if (Log.isEnabled(Log.Level.TRACE)) {
+                // the board keeps changing, so it is turned into text right away
+                Log.trace("Client #%d:%n%s", clientId, board.toString());
+            }
+            if (outcome != GameBoard.FIRST) {
+                boolean match = outcome == GameBoard.MATCH;
+                int row1 = board.getFirstRow();
+                int col1 = board.getFirstCol();
+                response.clear();
+                if (binary) {
+                    BinaryCodec.putMatch(response, match, row1, col1, row, col);
+                } else {
+                    TextCodec.putMatch(response, match, row1, col1, row, col);
+                }
+                if (match || mismatchDelayMillis == 0) {
+                    out.send(response.flip());
+                } else {
+                    out.sendDelayed(response.flip(), mismatchDelayMillis);
+                }
+                metrics.handled(match ? ConcentrationMessage.Type.MATCH : ConcentrationMessage.Type.MISMATCH, start);
+                if (feed != null && !match) {
+                    feed.hidden(row1, col1);
+                    feed.hidden(row, col);
+                }
+                if (feed != null && feed.isWatched()) {
+                    // spectators see a mismatch right away, without the delay
+                    watched.clear();
+                    TextCodec.putMatch(watched, match, row1, col1, row, col);
+                    feed.publish(watched.flip());
+                }
+                if (Log.isEnabled(Log.Level.DEBUG)) {
+                    Log.debug("Client #%d: sending: " + (match
+                                    ? ConcentrationProtocol.MATCH_MSG : ConcentrationProtocol.MISMATCH_MSG),
+                            clientId, row1, col1, row, col);
+                }
+            }
+        } catch (ConcentrationException e) {
+            metrics.error(ServerMetrics.ErrorType.OUT_OF_BOUNDS);
+            sendError("Coordinates out of bounds" + "[" + row + "]" + "[" + col + "]", out);
+            return -1;
+        }
+
+        if (board.gameOver()) {
+            response.clear();
+            if (binary) {
+                BinaryCodec.putGameOver(response);
+            } else {
+                TextCodec.putGameOver(response);
+            }
+            out.send(response.flip());
+            metrics.handled(ConcentrationMessage.Type.GAME_OVER, start);
+            metrics.gameCompleted();
+            if (journal != null && token != null) {
+                journal.ended(token);
+            }
+            if (tally != null) {
+                history.add(tally.toRecord(board));
+            }
+            if (feed != null) {
+                watched.clear();
+                TextCodec.putGameOver(watched);
+                feed.publish(watched.flip());
+                endFeed();
+            }
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("Client #%d: sending: %s", clientId, ConcentrationProtocol.GAME_OVER_MSG);
+            }
+            Log.info("Client #%d: Client ending...", clientId);
+            this.state = State.CLOSED;
+        }
+        metrics.handled(ConcentrationMessage.Type.REVEAL, start);
+        return outcome;
+    }
+
+    /**
+     * Stop streaming the game to its spectators.
+     */
+    private void endFeed() {
+        if (feed != null) {
+            feed.end();
+            feed = null;
+        }
+    }
+
+    private void sendError(String text, Output out) {
+        response.clear();
+        if (binary) {
+            BinaryCodec.putError(response, text);
+        } else {
+            TextCodec.putError(response, text);
+        }
+        out.send(response.flip());
+    }
+}
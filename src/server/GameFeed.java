@@ -0,0 +1,201 @@
+package server;
+
+import common.ConcentrationProtocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The stream of one game's updates, for its spectators.  The game's thread
+ * appends each update once, as text, to a linked list of frames; every
+ * spectator reads the same frames from its own place in the list, on the
+ * {@link SpectatorServer}'s thread.  Publishing costs the game one copy of
+ * the message and a wakeup, however many spectators there are, and
+ * nothing at all while nobody watches.  Frames every spectator has passed
+ * are left to the garbage collector.
+ * <p>
+ * The feed also keeps the cards as they stand, as in a SNAPSHOT, so that a
+ * spectator who joins mid-game starts from the board the players see.
+ * The game's thread updates them on every change, watched or not, under
+ * the feed's lock, before it publishes the change; a spectator reads them
+ * under the lock after it is counted and has taken its place in the
+ * frames, so any change it does not see in them reaches it as a frame.
+ */
+class GameFeed {
+    /**
+     * One update, shared by all spectators.
+     */
+    static class Frame {
+        final byte[] bytes;
+        /**
+         * the number of the update in the game, for the lag of a spectator
+         */
+        final long sequence;
+        volatile Frame next;
+
+        private Frame(byte[] bytes, long sequence) {
+            this.bytes = bytes;
+            this.sequence = sequence;
+        }
+    }
+
+    private final SpectatorServer server;
+    private final long gameId;
+    private final int dimension;
+    /**
+     * the latest frame; written by the game's thread only
+     */
+    private volatile Frame tail;
+    private volatile boolean ended;
+    /**
+     * is the feed waiting for the spectator thread?
+     */
+    final AtomicBoolean changed;
+    /**
+     * the spectators, touched by the spectator thread only
+     */
+    final List<SpectatorServer.Spectator> spectators;
+    /**
+     * how many watch, written by the spectator thread only
+     */
+    private volatile int watchers;
+    /**
+     * the cards as they stand, one SNAPSHOT character each, row by row;
+     * null if the board has too many pairs for a snapshot.  Guarded by this
+     */
+    private final byte[] cards;
+    /**
+     * has a card been turned over yet?  Guarded by this
+     */
+    private boolean underway;
+
+    GameFeed(SpectatorServer server, long gameId, int dimension) {
+        this.server = server;
+        this.gameId = gameId;
+        this.dimension = dimension;
+        this.tail = new Frame(new byte[0], 0);
+        this.changed = new AtomicBoolean();
+        this.spectators = new ArrayList<>();
+        if (dimension * dimension / 2 <= ConcentrationProtocol.SNAPSHOT_SYMBOLS.length()) {
+            this.cards = new byte[dimension * dimension];
+            Arrays.fill(cards, (byte) ConcentrationProtocol.SNAPSHOT_HIDDEN);
+        } else {
+            this.cards = null;
+        }
+    }
+
+    long getGameId() {
+        return gameId;
+    }
+
+    int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Is anybody watching?  The game may skip encoding the update if not.
+     *
+     * @return whether there are spectators
+     */
+    boolean isWatched() {
+        return watchers > 0;
+    }
+
+    /**
+     * Append an update.  Called by the game's thread only.
+     *
+     * @param message the update, encoded as text; the bytes are copied
+     */
+    void publish(ByteBuffer message) {
+        if (watchers == 0 || ended) {
+            return;
+        }
+        byte[] bytes = new byte[message.remaining()];
+        message.get(message.position(), bytes);
+        Frame frame = new Frame(bytes, tail.sequence + 1);
+        tail.next = frame;
+        tail = frame;
+        server.changed(this);
+    }
+
+    /**
+     * Record a card turned over.  Called by the game's thread only, before
+     * it publishes the card.
+     *
+     * @param row the row of the card
+     * @param col the column of the card
+     * @param symbol its symbol
+     */
+    synchronized void revealed(int row, int col, int symbol) {
+        underway = true;
+        if (cards != null) {
+            cards[row * dimension + col] = (byte) ConcentrationProtocol.SNAPSHOT_SYMBOLS.charAt(symbol);
+        }
+    }
+
+    /**
+     * Record a card turned back after a mismatch.  Called by the game's
+     * thread only, before it publishes the mismatch.
+     *
+     * @param row the row of the card
+     * @param col the column of the card
+     */
+    synchronized void hidden(int row, int col) {
+        if (cards != null) {
+            cards[row * dimension + col] = (byte) ConcentrationProtocol.SNAPSHOT_HIDDEN;
+        }
+    }
+
+    /**
+     * Start from the cards of a resumed game, before the feed can be
+     * watched.
+     *
+     * @param snapshot the cards, as in a SNAPSHOT
+     */
+    synchronized void restore(CharSequence snapshot) {
+        underway = true;
+        for (int i = 0; i < cards.length; ++i) {
+            cards[i] = (byte) snapshot.charAt(i);
+        }
+    }
+
+    /**
+     * Get the cards as they stand, for a spectator who joins.
+     *
+     * @return the cards as in a SNAPSHOT; if the board has too many pairs
+     *         for one, empty while no card has been turned over, else null
+     */
+    synchronized String snapshot() {
+        if (cards != null) {
+            return new String(cards, StandardCharsets.US_ASCII);
+        }
+        return underway ? null : "";
+    }
+
+    /**
+     * End the stream once the game is over or abandoned; the spectators are
+     * disconnected once they have been sent every update.
+     */
+    void end() {
+        if (!ended) {
+            ended = true;
+            server.ended(this);
+        }
+    }
+
+    boolean isEnded() {
+        return ended;
+    }
+
+    Frame getTail() {
+        return tail;
+    }
+
+    void setWatchers(int watchers) {
+        this.watchers = watchers;
+    }
+}
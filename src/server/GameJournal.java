@@ -0,0 +1,394 @@
+package server;
+
+import common.ConcentrationException;
+import common.Log;
+import game.BoardKind;
+import game.GameBoard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * A write-ahead log of the resumable games, so that the games in progress
+ * survive a restart of the server.  Each game is logged as the seed its
+ * board was dealt from, then every card revealed, then its end; on
+ * startup the boards of the games that never ended are dealt again and
+ * the reveals replayed on them.
+ * <p>
+ * The log is a series of segment files of {@link #SEGMENT_BYTES}, each
+ * memory mapped and appended to in fixed size records.  An append is a
+ * copy into the mapping under a short lock, so a process that crashes
+ * loses nothing; one thread forces the new records to disk every few
+ * milliseconds, so the moves never wait for the disk and a power failure
+ * loses at most the last few milliseconds.  Once every game started in
+ * a segment, or before it, has ended, the segment is deleted.
+ * <p>
+ * A record is {@link #RECORD_BYTES} long: its type, two small numbers,
+ * a CRC32C of the rest, the token of the game and, for a START, the seed
+ * of its board.  The log ends at the first record that is zero or fails
+ * its check.
+ */
+class GameJournal implements Runnable {
+    /**
+     * the size of a segment file
+     */
+    final static int SEGMENT_BYTES = 4 << 20;
+    private final static int RECORD_BYTES = 24;
+    /*
+     * the types of record; 0 marks the end of the log
+     */
+    private final static byte START = 1;
+    private final static byte REVEAL = 2;
+    private final static byte END = 3;
+    private final static String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final BoardKind kind;
+    private final long syncMillis;
+    private final ServerMetrics metrics;
+    /**
+     * each segment file by its number, the oldest first
+     */
+    private final TreeMap<Integer, Path> segments;
+    /**
+     * the segment of the START of each game that has not ended, by token
+     */
+    private final Map<Long, Integer> live;
+    /**
+     * the games that have not ended by the segment they started in
+     */
+    private final TreeMap<Integer, Integer> liveStarts;
+    /**
+     * the games found unfinished on startup, in the order they started
+     */
+    private final Map<String, GameBoard> recovered;
+    /**
+     * the segments filled but not yet forced to disk
+     */
+    private final List<MappedByteBuffer> filled;
+    /**
+     * the record being written; appends are few bytes, so one buffer serves
+     */
+    private final ByteBuffer record;
+    private final CRC32C crc;
+
+    /*
+     * the segment being appended to, guarded by this
+     */
+    private int active;
+    private MappedByteBuffer mapped;
+    private int position;
+    /**
+     * how far the active segment has been forced, touched by the sync
+     * thread only
+     */
+    private int synced;
+
+    /**
+     * Open the log in a directory, creating it if needed, and deal again
+     * the boards of the games that never ended.
+     *
+     * @param directory where the segment files are
+     * @param kind the kind of board of the new games
+     * @param syncMillis how often the new records are forced to disk
+     * @param metrics where to count the records and the syncs
+     * @throws IOException if the directory or a segment cannot be read or written
+     */
+    GameJournal(Path directory, BoardKind kind, long syncMillis, ServerMetrics metrics) throws IOException {
+        this.directory = directory;
+        this.kind = kind;
+        this.syncMillis = syncMillis;
+        this.metrics = metrics;
+        this.segments = new TreeMap<>();
+        this.live = new HashMap<>();
+        this.liveStarts = new TreeMap<>();
+        this.recovered = new LinkedHashMap<>();
+        this.filled = new ArrayList<>();
+        this.record = ByteBuffer.allocate(RECORD_BYTES);
+        this.crc = new CRC32C();
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    Log.warn("Journal: ignoring %s", file);
+                }
+            }
+        }
+        replay();
+        this.active = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        this.mapped = map(active);
+        this.position = 0;
+        this.synced = 0;
+    }
+
+    /**
+     * Start forcing the records to disk, and deleting the segments no
+     * longer needed, on a daemon thread.
+     */
+    void start() {
+        Thread thread = new Thread(this, "concentration-journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the games found unfinished on startup, with their boards as
+     * they were left.
+     *
+     * @return the boards by token, in the order the games started
+     */
+    Map<String, GameBoard> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Log the start of a game.
+     *
+     * @param token the token of the game
+     * @param board its board, dealt from its seed
+     */
+    synchronized void started(String token, GameBoard board) {
+        long game = Long.parseUnsignedLong(token, 16);
+        live.put(game, active);
+        liveStarts.merge(active, 1, Integer::sum);
+        append(START, board.getDIM(), kind.ordinal(), game, board.getSeed());
+    }
+
+    /**
+     * Log a card revealed.
+     *
+     * @param token the token of the game
+     * @param row the row of the card
+     * @param col the column of the card
+     */
+    synchronized void revealed(String token, int row, int col) {
+        append(REVEAL, row, col, Long.parseUnsignedLong(token, 16), 0);
+    }
+
+    /**
+     * Log the end of a game: it is over, or can no longer be resumed.
+     * Nothing is logged for a game that has ended already.
+     *
+     * @param token the token of the game
+     */
+    synchronized void ended(String token) {
+        long game = Long.parseUnsignedLong(token, 16);
+        Integer segment = live.remove(game);
+        if (segment == null) {
+            return;
+        }
+        if (liveStarts.merge(segment, -1, Integer::sum) == 0) {
+            liveStarts.remove(segment);
+        }
+        append(END, 0, 0, game, 0);
+    }
+
+    /**
+     * Copy a record into the active segment, moving on to a new segment
+     * when it is full.
+     */
+    private void append(byte type, int a, int b, long game, long seed) {
+        if (position + RECORD_BYTES > SEGMENT_BYTES && !roll()) {
+            return;
+        }
+        record.clear();
+        record.put(type).put((byte) a).put((byte) b).put((byte) 0).putInt(0).putLong(game).putLong(seed);
+        record.putInt(4, checksum(record));
+        mapped.put(position, record.array());
+        position += RECORD_BYTES;
+        metrics.journalAppended();
+    }
+
+    /**
+     * Move on to a new segment; the full one is forced by the sync thread.
+     *
+     * @return false if there is no new segment, and the record is dropped
+     */
+    private boolean roll() {
+        try {
+            MappedByteBuffer next = map(active + 1);
+            filled.add(mapped);
+            ++active;
+            mapped = next;
+            position = 0;
+            return true;
+        } catch (IOException e) {
+            // the games go on, only a restart will not find them; tried
+            // again with the next record
+            Log.error("Journal: cannot open segment %d: %s", active + 1, e.getMessage());
+            return false;
+        }
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        Path file = directory.resolve(String.format("%08d%s", segment, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            segments.put(segment, file);
+            return buffer;
+        }
+    }
+
+    /**
+     * The sync thread: force the new records to disk, then delete the
+     * segments no game needs any more.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(syncMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sync();
+            compact();
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk, in one go per segment.
+     */
+    private void sync() {
+        List<MappedByteBuffer> full;
+        MappedByteBuffer current;
+        int end;
+        synchronized (this) {
+            full = filled.isEmpty() ? List.of() : new ArrayList<>(filled);
+            filled.clear();
+            current = mapped;
+            end = position;
+        }
+        for (MappedByteBuffer buffer : full) {
+            buffer.force();
+            // the records of the active segment start from 0
+            synced = 0;
+        }
+        if (end > synced) {
+            current.force(synced, end - synced);
+            synced = end;
+            metrics.journalSynced();
+        } else if (!full.isEmpty()) {
+            metrics.journalSynced();
+        }
+    }
+
+    /**
+     * Delete the segments older than the START of every game that has not
+     * ended.  A game only appends to the segments after its START, so
+     * nothing in them is needed any more.
+     */
+    private void compact() {
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            int needed = liveStarts.isEmpty() ? active : Math.min(liveStarts.firstKey(), active);
+            Map<Integer, Path> older = segments.headMap(needed);
+            obsolete.addAll(older.values());
+            older.clear();
+        }
+        for (Path file : obsolete) {
+            try {
+                Files.delete(file);
+                metrics.journalCompacted();
+                Log.debug("Journal: deleted %s", file);
+            } catch (IOException e) {
+                Log.warn("Journal: cannot delete %s: %s", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read every segment in order and replay the games on boards dealt
+     * again from their seeds.  The games that never ended are kept as
+     * recovered, and keep their segments.
+     */
+    private void replay() throws IOException {
+        Map<Long, GameBoard> games = new LinkedHashMap<>();
+        Map<Long, Integer> starts = new HashMap<>();
+        ByteBuffer in = ByteBuffer.allocate(RECORD_BYTES);
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (data.remaining() >= RECORD_BYTES) {
+                    in.clear();
+                    data.get(in.array());
+                    byte type = in.get(0);
+                    if (type == 0) {
+                        break;
+                    }
+                    if (in.getInt(4) != checksum(in)) {
+                        Log.warn("Journal: %s is torn at byte %d", segment.getValue(), data.position() - RECORD_BYTES);
+                        break;
+                    }
+                    long game = in.getLong(8);
+                    switch (type) {
+                        case START:
+                            try {
+                                games.put(game, BoardKind.values()[in.get(2)].create(in.get(1), in.getLong(16)));
+                                starts.put(game, segment.getKey());
+                            } catch (ConcentrationException | ArrayIndexOutOfBoundsException e) {
+                                Log.warn("Journal: cannot deal game %x again: %s", game, e.getMessage());
+                            }
+                            break;
+                        case REVEAL:
+                            GameBoard board = games.get(game);
+                            if (board != null) {
+                                try {
+                                    board.revealCard(in.get(1), in.get(2));
+                                } catch (ConcentrationException e) {
+                                    Log.warn("Journal: cannot replay game %x: %s", game, e.getMessage());
+                                    games.remove(game);
+                                }
+                            }
+                            break;
+                        case END:
+                            games.remove(game);
+                            break;
+                        default:
+                            Log.warn("Journal: unknown record %d in %s", type, segment.getValue());
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Long, GameBoard> game : games.entrySet()) {
+            if (game.getValue().gameOver()) {
+                continue;
+            }
+            int segment = starts.get(game.getKey());
+            live.put(game.getKey(), segment);
+            liveStarts.merge(segment, 1, Integer::sum);
+            recovered.put(Long.toUnsignedString(game.getKey(), 16), game.getValue());
+        }
+        if (!segments.isEmpty()) {
+            Log.info("Journal: %d unfinished games recovered from %d segments", recovered.size(), segments.size());
+        }
+    }
+
+    /**
+     * The CRC32C of a record, but for its own field.
+     */
+    private int checksum(ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), 0, 4);
+        crc.update(record.array(), 8, RECORD_BYTES - 8);
+        return (int) crc.getValue();
+    }
+}
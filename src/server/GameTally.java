@@ -0,0 +1,64 @@
+package server;
+
+import game.GameBoard;
+import history.GameRecord;
+
+import java.util.Arrays;
+
+/**
+ * How a game has gone so far, for the game history: when it started, the
+ * cards revealed and how long each turn took.  Touched by the session
+ * playing the game only; kept with the board while the game waits to be
+ * resumed.
+ */
+class GameTally {
+    private final long startedMillis;
+    private final long startNanos;
+    private long lastTurnNanos;
+    private int moves;
+    private int mismatches;
+    private int turns;
+    private int[] turnMicros;
+
+    GameTally() {
+        this.startedMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.lastTurnNanos = startNanos;
+        this.turnMicros = new int[16];
+    }
+
+    /**
+     * Count a card revealed.
+     */
+    void revealed() {
+        ++moves;
+    }
+
+    /**
+     * End a turn, timed from the end of the previous one.
+     *
+     * @param match whether the two cards matched
+     */
+    void turned(boolean match) {
+        long now = System.nanoTime();
+        if (turns == turnMicros.length) {
+            turnMicros = Arrays.copyOf(turnMicros, turns * 2);
+        }
+        turnMicros[turns++] = (int) Math.min(Integer.MAX_VALUE, (now - lastTurnNanos) / 1000);
+        lastTurnNanos = now;
+        if (!match) {
+            ++mismatches;
+        }
+    }
+
+    /**
+     * Make the record of the completed game.
+     *
+     * @param board the board it was played on
+     * @return the record
+     */
+    GameRecord toRecord(GameBoard board) {
+        return new GameRecord(board.getSeed(), board.getDIM(), startedMillis,
+                (System.nanoTime() - startNanos) / 1_000_000, moves, mismatches, Arrays.copyOf(turnMicros, turns));
+    }
+}
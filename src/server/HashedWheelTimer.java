@@ -0,0 +1,134 @@
+package server;
+
+import common.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel shared by all sessions of a server.  Scheduling is
+ * a lock-free queue insert, and one worker thread moves new timeouts into
+ * the wheel and expires one bucket per tick, so thousands of pending
+ * mismatch delays cost a single thread.  Expiry has tick granularity.
+ */
+public class HashedWheelTimer {
+    /**
+     * A scheduled task.  Only the worker thread touches the bucket links.
+     */
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final Executor executor;
+    /**
+     * timeouts scheduled since the last tick
+     */
+    private final Queue<Timeout> pending;
+    private final long startTime;
+    private long tick;
+
+    /**
+     * Create and start a timer.
+     *
+     * @param tickMillis the length of one tick
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param executor runs the expired tasks; tasks that may block should
+     *                 not run on the worker thread itself
+     */
+    public HashedWheelTimer(long tickMillis, int wheelSize, Executor executor) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.executor = executor;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.tick = 0;
+        Thread worker = new Thread(this::run, "concentration-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Run a task once the delay has passed.  Safe to call from any thread.
+     *
+     * @param task the task
+     * @param delayMillis the delay
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        pending.add(new Timeout(task, deadline));
+    }
+
+    private void run() {
+        while (true) {
+            long sleepNanos = (tick + 1) * tickNanos - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferPending();
+            expire((int) (tick & mask), (tick + 1) * tickNanos);
+            tick++;
+        }
+    }
+
+    /**
+     * Put the newly scheduled timeouts in their buckets.
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            long ticks = Math.max(tick, timeout.deadline / tickNanos);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            int index = (int) (ticks & mask);
+            timeout.next = wheel[index];
+            wheel[index] = timeout;
+        }
+    }
+
+    /**
+     * Run every timeout of the bucket that is due, and count down the
+     * rounds of the others.
+     */
+    private void expire(int index, long now) {
+        Timeout previous = null;
+        Timeout timeout = wheel[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                if (previous == null) {
+                    wheel[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                try {
+                    executor.execute(timeout.task);
+                } catch (RuntimeException e) {
+                    Log.warn("Unexpected error: %s", e.getMessage());
+                }
+            } else {
+                timeout.remainingRounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+}
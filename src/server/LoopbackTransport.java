@@ -0,0 +1,130 @@
+package server;
+
+import common.TextCodec;
+import common.Transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The client end of a connection to a session in the same thread.  The
+ * requests the client writes are queued, and only when it reads does the
+ * session handle them, so a whole game runs on one thread without any
+ * hand-offs, sockets or locks.  This is what lets a harness push millions
+ * of games through the real request handling.
+ *
+ * There is no clock: a delayed response is delivered straight away, still
+ * in order.  One transport can be reused for game after game.
+ */
+public class LoopbackTransport implements Transport, ConcentrationSession.Output {
+    private ConcentrationSession session;
+    /**
+     * requests not handled yet, in write mode
+     */
+    private ByteBuffer requests;
+    /**
+     * responses not read yet, in write mode
+     */
+    private ByteBuffer responses;
+    private boolean closed;
+
+    /**
+     * Create a transport not connected to a session yet.
+     */
+    public LoopbackTransport() {
+        this.requests = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.responses = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.closed = true;
+    }
+
+    /**
+     * Connect to a new session, forgetting any previous one, and open it.
+     *
+     * @param session the session of the next game
+     * @return this transport
+     */
+    public LoopbackTransport connect(ConcentrationSession session) {
+        this.session = session;
+        this.requests.clear();
+        this.responses.clear();
+        this.closed = false;
+        session.open(this);
+        return this;
+    }
+
+    /**
+     * Hand the queued requests to the session first if no response is
+     * waiting.
+     *
+     * @throws IOException if the session has nothing to say, which on a
+     *                     real connection would block forever
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (responses.position() == 0) {
+            requests.flip();
+            while (session.handleNext(requests, this)) {
+                // keep going until the buffer holds no complete request
+            }
+            requests.compact();
+        }
+        if (responses.position() == 0) {
+            if (session.isClosed() || closed) {
+                return -1;
+            }
+            throw new IOException("No response to wait for");
+        }
+        responses.flip();
+        int count = Math.min(dst.remaining(), responses.remaining());
+        int limit = responses.limit();
+        responses.limit(responses.position() + count);
+        dst.put(responses);
+        responses.limit(limit);
+        responses.compact();
+        return count;
+    }
+
+    @Override
+    public void write(ByteBuffer src) throws IOException {
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        requests = append(requests, src);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+    }
+
+    @Override
+    public void send(ByteBuffer message) {
+        responses = append(responses, message);
+    }
+
+    @Override
+    public void sendDelayed(ByteBuffer message, long delayMillis) {
+        send(message);
+    }
+
+    /**
+     * Append to a buffer in write mode, growing it if needed.
+     *
+     * @return the buffer, or the bigger one that replaced it
+     */
+    private static ByteBuffer append(ByteBuffer buffer, ByteBuffer src) {
+        if (buffer.remaining() < src.remaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(buffer.capacity() * 2, buffer.position() + src.remaining()));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        return buffer.put(src);
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackTransport@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
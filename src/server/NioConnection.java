@@ -0,0 +1,251 @@
+package server;
+
+import common.Log;
+import common.TextCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One client connection served by a {@link ConcentrationEventLoop}.  It
+ * feeds the incoming bytes to its session,
+ * and buffers the responses until the channel can take them.  All methods
+ * are called from the event loop thread only; the room of a shared game
+ * writes through {@link #remote}, which hands each message to the loop.
+ */
+class NioConnection implements ConcentrationSession.Output {
+    private final ConcentrationEventLoop loop;
+    private final SocketChannel channel;
+    private final ConcentrationSession session;
+    private final ServerMetrics metrics;
+    private SelectionKey key;
+    /**
+     * messages of the room on their way to the loop; the connection stays
+     * open until they are written, even once the room has ended the game
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * the output of a room, which sends from the room's thread
+     */
+    private final ConcentrationSession.Sender remote = this::sendFromRoom;
+
+    private final ByteBuffer readBuffer;
+    private ByteBuffer writeBuffer;
+
+    /**
+     * a response waiting for its delay to pass
+     */
+    private final ByteBuffer delayed;
+    /**
+     * is a delayed response pending?  While it is, the connection is
+     * parked and reads no further requests
+     */
+    private boolean parked;
+    /**
+     * has the session been counted as active?
+     */
+    private boolean active;
+
+    /**
+     * Create a connection.
+     *
+     * @param loop the event loop that owns the connection
+     * @param channel the client channel
+     * @param session the game played over this connection
+     * @param metrics where to count the session
+     */
+    NioConnection(ConcentrationEventLoop loop, SocketChannel channel, ConcentrationSession session,
+                  ServerMetrics metrics) {
+        this.loop = loop;
+        this.channel = channel;
+        this.session = session;
+        this.metrics = metrics;
+        this.readBuffer = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.writeBuffer = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.delayed = ByteBuffer.allocate(TextCodec.MAX_LINE);
+        this.parked = false;
+    }
+
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Called once the channel is registered with the selector.
+     *
+     * @param key the selection key of the channel
+     */
+    void open(SelectionKey key) {
+        this.key = key;
+        this.active = true;
+        metrics.sessionOpened();
+        Log.info("Client #%d: Client %d connected: %s", session.getClientId(), session.getClientId(), channel);
+        if (session.isShared()) {
+            session.seat(remote);
+        } else {
+            session.open(this);
+        }
+        flush();
+    }
+
+    /**
+     * The channel has bytes to read.
+     */
+    void onReadable() {
+        try {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.IO);
+            close();
+            return;
+        }
+        process();
+        flush();
+    }
+
+    /**
+     * The channel can take more bytes.
+     */
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * The delay of the pending response has passed.
+     */
+    private void onTimer() {
+        if (!parked || !channel.isOpen()) {
+            return;
+        }
+        parked = false;
+        send(delayed.flip());
+        process();
+        flush();
+    }
+
+    @Override
+    public void send(ByteBuffer message) {
+        if (writeBuffer.remaining() < message.remaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + message.remaining()));
+            writeBuffer.flip();
+            bigger.put(writeBuffer);
+            writeBuffer = bigger;
+        }
+        writeBuffer.put(message);
+    }
+
+    /**
+     * Hand a message of the room over to the loop.  Called from the room's
+     * thread.
+     */
+    private void sendFromRoom(ByteBuffer message) {
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining()).put(message).flip();
+        inFlight.incrementAndGet();
+        loop.execute(() -> {
+            inFlight.decrementAndGet();
+            send(copy);
+            flush();
+        });
+    }
+
+    @Override
+    public void sendDelayed(ByteBuffer message, long delayMillis) {
+        delayed.clear();
+        delayed.put(message);
+        parked = true;
+        loop.schedule(this::onTimer, delayMillis);
+    }
+
+    /**
+     * Hand every complete request in the read buffer to the session.
+     * Stops early while a delayed response is pending, so the requests
+     * behind it are answered in order once it has been sent.
+     */
+    private void process() {
+        readBuffer.flip();
+        while (!parked && session.handleNext(readBuffer, this)) {
+            // keep going until the buffer holds no complete request
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * Write as much of the buffered output as the channel takes, then
+     * update the interest set (or close once a finished game is flushed).
+     */
+    private void flush() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            writeBuffer.compact();
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+            metrics.error(ServerMetrics.ErrorType.IO);
+            close();
+            return;
+        }
+        boolean pending = writeBuffer.position() > 0;
+        if (session.isClosed() && !pending && inFlight.get() == 0) {
+            close();
+            return;
+        }
+        int ops = 0;
+        if (!parked && !session.isClosed()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (pending) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * Close the connection of a session that failed, so that the loop goes
+     * on serving the others.
+     *
+     * @param e what went wrong
+     */
+    void fail(RuntimeException e) {
+        Log.error("Client #%d: Unexpected error: %s", session.getClientId(), e);
+        try {
+            close();
+        } catch (RuntimeException closing) {
+            Log.warn("Client #%d: Unexpected error: %s", session.getClientId(), closing);
+        }
+    }
+
+    /**
+     * Close the channel and forget the connection.
+     */
+    void close() {
+        parked = false;
+        try {
+            if (active) {
+                active = false;
+                metrics.sessionClosed();
+                session.close();
+            }
+        } finally {
+            // the channel goes even if the session fails to close
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.warn("Unexpected error: %s", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for writing one response to a client's transport.
+ */
+@Name("concentration.ResponseWrite")
+@Label("Response Write")
+@Category({"Concentration", "Server"})
+@Description("Writing one response to the client")
+@StackTrace(false)
+final class ResponseWriteEvent extends jdk.jfr.Event {
+    @Label("Client Id")
+    int clientId;
+
+    @Label("Game Id")
+    @Description("The seed of the board")
+    long gameId;
+
+    @Label("Size")
+    @DataAmount
+    int bytes;
+
+    @Label("Delayed")
+    @Description("Written by the timer once the mismatch delay had passed")
+    boolean delayed;
+}
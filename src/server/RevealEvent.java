@@ -0,0 +1,54 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for handling one reveal request, responses
+ * included.
+ */
+@Name("concentration.Reveal")
+@Label("Reveal")
+@Category({"Concentration", "Server"})
+@Description("Handling a reveal request and sending its responses")
+@StackTrace(false)
+final class RevealEvent extends jdk.jfr.Event {
+    /**
+     * the outcome of a reveal the board rejected
+     */
+    final static String OUT_OF_BOUNDS = "OUT_OF_BOUNDS";
+    /**
+     * the outcomes of {@link game.GameBoard#revealCard}, by value
+     */
+    private final static String[] OUTCOMES = {"FIRST", "MATCH", "MISMATCH"};
+
+    @Label("Client Id")
+    int clientId;
+
+    @Label("Game Id")
+    @Description("The seed of the board")
+    long gameId;
+
+    @Label("Row")
+    int row;
+
+    @Label("Column")
+    int col;
+
+    @Label("Outcome")
+    @Description("FIRST, MATCH, MISMATCH or OUT_OF_BOUNDS")
+    String outcome;
+
+    /**
+     * Name an outcome of {@link game.GameBoard#revealCard}.
+     *
+     * @param outcome the outcome, or -1 if the reveal was rejected
+     * @return its name
+     */
+    static String outcome(int outcome) {
+        return outcome < 0 ? OUT_OF_BOUNDS : OUTCOMES[outcome];
+    }
+}
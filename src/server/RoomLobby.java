@@ -0,0 +1,90 @@
+package server;
+
+import common.ConcentrationException;
+import common.Log;
+import history.HistoryWriter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Seats each new client: in a game of its own, or, when the server runs
+ * shared rooms, in the room being filled.  A new room is opened, with a
+ * board from the pool, once the previous one is full.  Called from the
+ * accept thread only.
+ */
+class RoomLobby {
+    private final BoardPool boards;
+    private final int dimension;
+    private final int roomSize;
+    private final long mismatchDelayMillis;
+    private final HashedWheelTimer timer;
+    private final ServerMetrics metrics;
+    private final SpectatorServer spectators;
+    /**
+     * where the games of lost connections are kept, null if they are not
+     */
+    private final SessionRegistry sessions;
+    /**
+     * where the completed games are recorded, null if they are not
+     */
+    private final HistoryWriter history;
+    /**
+     * the threads the rooms' tasks run on, null without rooms
+     */
+    private final ExecutorService executor;
+
+    /**
+     * the room being filled, null if there is none
+     */
+    private ConcentrationRoom room;
+    /**
+     * the next free seat in the room being filled
+     */
+    private int seat;
+    private int roomId = 0;
+
+    /**
+     * Create the lobby of a server.
+     *
+     * @param options the server settings, including the room size
+     * @param boards the pool the boards are dealt from
+     * @param timer the timer that delays mismatches in the rooms
+     * @param metrics where the sessions and rooms record what they do
+     * @param spectators where the games can be watched, null if they cannot
+     */
+    RoomLobby(ServerOptions options, BoardPool boards, HashedWheelTimer timer, ServerMetrics metrics,
+              SpectatorServer spectators) {
+        this.boards = boards;
+        this.dimension = options.getDimension();
+        this.roomSize = options.getRoomSize();
+        this.mismatchDelayMillis = options.getMismatchDelayMillis();
+        this.timer = timer;
+        this.metrics = metrics;
+        this.spectators = spectators;
+        this.sessions = roomSize == 1 ? options.newSessionRegistry(metrics) : null;
+        this.history = roomSize == 1 ? options.newHistoryWriter() : null;
+        this.executor = roomSize > 1 ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    /**
+     * Create the session of a new client.
+     *
+     * @param clientId the unique ID of the client
+     * @return the session, seated in a room if the server runs rooms
+     * @throws ConcentrationException if no board can be dealt
+     */
+    ConcentrationSession newSession(int clientId) throws ConcentrationException {
+        if (roomSize == 1) {
+            return new ConcentrationSession(boards.take(dimension), clientId, mismatchDelayMillis, metrics,
+                    spectators, sessions, history);
+        }
+        if (room == null || seat == roomSize) {
+            room = new ConcentrationRoom(++roomId, roomSize, boards.take(dimension), mismatchDelayMillis, timer,
+                    metrics, spectators, executor);
+            seat = 0;
+            Log.info("Room #%d: waiting for %d players", roomId, roomSize);
+        }
+        return new ConcentrationSession(room, seat++, clientId, metrics);
+    }
+}
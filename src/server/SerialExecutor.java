@@ -0,0 +1,77 @@
+package server;
+
+import common.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on threads
+ * borrowed from a shared executor.  Whatever a serial executor's tasks
+ * touch has a single writer without any lock, while many serial executors
+ * spread over all the threads of the shared one.  Submitting never blocks.
+ */
+class SerialExecutor implements Executor {
+    /**
+     * tasks run per turn on a shared thread, so a busy executor lets
+     * others have a go
+     */
+    private final static int BATCH = 64;
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    /**
+     * is a drain scheduled or running?
+     */
+    private final AtomicBoolean scheduled;
+
+    /**
+     * Create a serial executor.
+     *
+     * @param executor the shared executor the tasks run on
+     */
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Run a task after every task submitted before it.  Safe to call from
+     * any thread, including from a task.
+     *
+     * @param task the task
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            for (int i = 0; i < BATCH && (task = tasks.poll()) != null; ++i) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.warn("Unexpected error: %s", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // a task added after the last poll must not be stranded
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package server;
+
+import common.ConcentrationMessage;
+import common.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the server has been doing: connections, sessions, games,
+ * spectators, resumed and journaled games, errors and how long the requests took to
+ * handle.  Counters are striped
+ * {@link LongAdder}s and latencies go to {@link LatencyHistogram}s, so
+ * recording never takes a lock and threads hardly contend.  Only
+ * {@link #scrape} synchronizes, and only with other scrapes.
+ */
+public class ServerMetrics {
+    /**
+     * The kinds of errors counted.
+     */
+    public enum ErrorType {
+        /** a reveal the client could not parse as coordinates */
+        INVALID_COORDINATE,
+        /** a reveal outside the board */
+        OUT_OF_BOUNDS,
+        /** a malformed request, or one the protocol does not allow now */
+        PROTOCOL,
+        /** a connection that failed while reading or writing */
+        IO,
+        /** a board that could not be dealt for a new connection */
+        BOARD,
+        /** a reveal in a shared room by a player who does not have the turn */
+        OUT_OF_TURN
+    }
+
+    /**
+     * the messages whose handling is timed, in protocol order
+     */
+    private final static ConcentrationMessage.Type[] TIMED = {
+            ConcentrationMessage.Type.REVEAL, ConcentrationMessage.Type.CARD, ConcentrationMessage.Type.MATCH,
+            ConcentrationMessage.Type.MISMATCH, ConcentrationMessage.Type.GAME_OVER};
+    /**
+     * the quantiles reported for each histogram
+     */
+    private final static double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    /**
+     * a registry that records nothing, for sessions outside a server
+     */
+    public final static ServerMetrics NONE = new ServerMetrics(false);
+
+    private final boolean enabled;
+    private final LongAdder accepted;
+    private final LongAdder opened;
+    private final LongAdder closed;
+    private final LongAdder games;
+    private final LongAdder spectatorsJoined;
+    private final LongAdder spectatorsLeft;
+    private final LongAdder spectatorsDropped;
+    private final LongAdder detached;
+    private final LongAdder resumed;
+    private final LongAdder expired;
+    private final LongAdder journalRecords;
+    private final LongAdder journalSyncs;
+    private final LongAdder journalCompactions;
+    private final Map<ErrorType, LongAdder> errors;
+    private final Map<ConcentrationMessage.Type, LatencyHistogram> handling;
+
+    /*
+     * state of the previous scrape, for the connection rate
+     */
+    private long lastScrapeNanos;
+    private long lastAccepted;
+
+    /**
+     * Create an empty registry.
+     */
+    public ServerMetrics() {
+        this(true);
+    }
+
+    private ServerMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.accepted = new LongAdder();
+        this.opened = new LongAdder();
+        this.closed = new LongAdder();
+        this.games = new LongAdder();
+        this.spectatorsJoined = new LongAdder();
+        this.spectatorsLeft = new LongAdder();
+        this.spectatorsDropped = new LongAdder();
+        this.detached = new LongAdder();
+        this.resumed = new LongAdder();
+        this.expired = new LongAdder();
+        this.journalRecords = new LongAdder();
+        this.journalSyncs = new LongAdder();
+        this.journalCompactions = new LongAdder();
+        this.errors = new EnumMap<>(ErrorType.class);
+        for (ErrorType error : ErrorType.values()) {
+            errors.put(error, new LongAdder());
+        }
+        this.handling = new EnumMap<>(ConcentrationMessage.Type.class);
+        for (ConcentrationMessage.Type type : TIMED) {
+            handling.put(type, new LatencyHistogram());
+        }
+        this.lastScrapeNanos = System.nanoTime();
+    }
+
+    /**
+     * Count an accepted connection.
+     */
+    public void accepted() {
+        if (enabled) {
+            accepted.increment();
+        }
+    }
+
+    /**
+     * Count a session that started playing.
+     */
+    public void sessionOpened() {
+        if (enabled) {
+            opened.increment();
+        }
+    }
+
+    /**
+     * Count a session that ended, however it ended.
+     */
+    public void sessionClosed() {
+        if (enabled) {
+            closed.increment();
+        }
+    }
+
+    /**
+     * Count a game played to GAME_OVER.
+     */
+    public void gameCompleted() {
+        if (enabled) {
+            games.increment();
+        }
+    }
+
+    /**
+     * Count a spectator that started watching a game.
+     */
+    public void spectatorJoined() {
+        if (enabled) {
+            spectatorsJoined.increment();
+        }
+    }
+
+    /**
+     * Count a spectator that stopped watching, however it stopped.
+     */
+    public void spectatorLeft() {
+        if (enabled) {
+            spectatorsLeft.increment();
+        }
+    }
+
+    /**
+     * Count a spectator dropped for falling too far behind.
+     */
+    public void spectatorDropped() {
+        if (enabled) {
+            spectatorsDropped.increment();
+        }
+    }
+
+    /**
+     * Count a game kept for its client to resume after a lost connection.
+     */
+    public void sessionDetached() {
+        if (enabled) {
+            detached.increment();
+        }
+    }
+
+    /**
+     * Count a game taken up again by its client.
+     */
+    public void sessionResumed() {
+        if (enabled) {
+            resumed.increment();
+        }
+    }
+
+    /**
+     * Count a kept game dropped before its client came back, for its age or
+     * to make room.
+     */
+    public void sessionExpired() {
+        if (enabled) {
+            expired.increment();
+        }
+    }
+
+    /**
+     * Count a record appended to the {@link GameJournal}.
+     */
+    public void journalAppended() {
+        if (enabled) {
+            journalRecords.increment();
+        }
+    }
+
+    /**
+     * Count the journal's records forced to disk together.
+     */
+    public void journalSynced() {
+        if (enabled) {
+            journalSyncs.increment();
+        }
+    }
+
+    /**
+     * Count a journal segment deleted once none of its games was left.
+     */
+    public void journalCompacted() {
+        if (enabled) {
+            journalCompactions.increment();
+        }
+    }
+
+    /**
+     * Count an error.
+     *
+     * @param error the kind of error
+     */
+    public void error(ErrorType error) {
+        if (enabled) {
+            errors.get(error).increment();
+        }
+    }
+
+    /**
+     * Start timing the handling of a request.
+     *
+     * @return the start time to pass to {@link #handled}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record how long it took from the start of a request until a message
+     * was handled: the request itself, or a response it caused was sent.
+     *
+     * @param type the message, one of REVEAL, CARD, MATCH, MISMATCH or GAME_OVER
+     * @param start what {@link #start} returned for the request
+     */
+    public void handled(ConcentrationMessage.Type type, long start) {
+        if (enabled) {
+            handling.get(type).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Get the number of sessions playing right now.
+     *
+     * @return the active sessions
+     */
+    public long getActiveSessions() {
+        // closed first, so a session closing meanwhile is not counted below zero
+        long ended = closed.sum();
+        return opened.sum() - ended;
+    }
+
+    /**
+     * Write every metric in the plain text format Prometheus scrapes: one
+     * "name{labels} value" line per sample, with times in seconds.  The
+     * connection rate is averaged over the time since the previous scrape.
+     *
+     * @param out where to write
+     */
+    public synchronized void scrape(PrintWriter out) {
+        long now = System.nanoTime();
+        long acceptedNow = accepted.sum();
+        double rate = (acceptedNow - lastAccepted) / Math.max(1e-9, (now - lastScrapeNanos) / 1e9);
+        lastScrapeNanos = now;
+        lastAccepted = acceptedNow;
+
+        out.println("# TYPE concentration_connections_accepted_total counter");
+        out.println("concentration_connections_accepted_total " + acceptedNow);
+        out.println("# TYPE concentration_connections_accepted_per_second gauge");
+        out.println("concentration_connections_accepted_per_second " + rate);
+        out.println("# TYPE concentration_sessions_active gauge");
+        out.println("concentration_sessions_active " + getActiveSessions());
+        out.println("# TYPE concentration_games_completed_total counter");
+        out.println("concentration_games_completed_total " + games.sum());
+        out.println("# TYPE concentration_spectators_active gauge");
+        long left = spectatorsLeft.sum();
+        out.println("concentration_spectators_active " + (spectatorsJoined.sum() - left));
+        out.println("# TYPE concentration_spectators_dropped_total counter");
+        out.println("concentration_spectators_dropped_total " + spectatorsDropped.sum());
+        out.println("# TYPE concentration_sessions_detached gauge");
+        long taken = resumed.sum() + expired.sum();
+        out.println("concentration_sessions_detached " + (detached.sum() - taken));
+        out.println("# TYPE concentration_sessions_resumed_total counter");
+        out.println("concentration_sessions_resumed_total " + resumed.sum());
+        out.println("# TYPE concentration_sessions_expired_total counter");
+        out.println("concentration_sessions_expired_total " + expired.sum());
+        out.println("# TYPE concentration_journal_records_total counter");
+        out.println("concentration_journal_records_total " + journalRecords.sum());
+        out.println("# TYPE concentration_journal_syncs_total counter");
+        out.println("concentration_journal_syncs_total " + journalSyncs.sum());
+        out.println("# TYPE concentration_journal_segments_deleted_total counter");
+        out.println("concentration_journal_segments_deleted_total " + journalCompactions.sum());
+        out.println("# TYPE concentration_protocol_errors_total counter");
+        out.println("concentration_protocol_errors_total " + errors.get(ErrorType.PROTOCOL).sum());
+        out.println("# TYPE concentration_errors_total counter");
+        for (ErrorType error : ErrorType.values()) {
+            out.println("concentration_errors_total{type=\"" + error.name().toLowerCase() + "\"} "
+                    + errors.get(error).sum());
+        }
+        out.println("# TYPE concentration_handling_seconds summary");
+        for (ConcentrationMessage.Type type : TIMED) {
+            LatencyHistogram histogram = handling.get(type);
+            String message = "message=\"" + type + "\"";
+            for (double quantile : QUANTILES) {
+                out.println("concentration_handling_seconds{" + message + ",quantile=\"" + quantile + "\"} "
+                        + seconds(histogram.getValueAtPercentile(quantile * 100)));
+            }
+            out.println("concentration_handling_seconds_sum{" + message + "} " + seconds(histogram.getSum()));
+            out.println("concentration_handling_seconds_count{" + message + "} " + histogram.getCount());
+        }
+        out.println("# TYPE concentration_handling_max_seconds gauge");
+        for (ConcentrationMessage.Type type : TIMED) {
+            out.println("concentration_handling_max_seconds{message=\"" + type + "\"} "
+                    + seconds(handling.get(type).getMax()));
+        }
+        out.flush();
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
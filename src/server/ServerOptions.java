@@ -0,0 +1,353 @@
+package server;
+
+import common.Log;
+import game.BoardKind;
+import history.HistoryWriter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * The command line settings of the server: the port and board dimension,
+ * followed by optional "--name value" pairs.
+ */
+public class ServerOptions {
+    /**
+     * the usage message printed for bad arguments
+     */
+    public final static String USAGE =
+            "Usage: java ConcentrationServer <port number> <board dimension> [options]\n" +
+            "  --mode thread|virtual|nio   thread per connection, virtual thread per connection,\n" +
+            "                              or event loops (default thread)\n" +
+            "  --loops <n>                 event loops for nio mode (default one per core)\n" +
+            "  --mismatch-delay <ms>       pause before a mismatch is reported (default 1000)\n" +
+            "  --board object|bitset|large card objects, primitive bitset board, or int symbol\n" +
+            "                              board of up to 1024x1024 (default object)\n" +
+            "  --seed <n>                  seed of the board deals, for a repeatable run (default random)\n" +
+            "  --pool <n>                  boards dealt ahead per dimension, 0 for none (default 8)\n" +
+            "  --room-size <n>             players sharing a board and taking turns, 2 to 8,\n" +
+            "                              or 1 for a game per player (default 1)\n" +
+            "  --admin-port <port>         serve metrics at http://127.0.0.1:<port>/metrics (default off)\n" +
+            "  --watch-port <port>         stream games to spectators who send \"WATCH <game id>\",\n" +
+            "                              the id being the board seed (default off)\n" +
+            "  --resume-ttl <seconds>      keep the game of a lost connection this long for the\n" +
+            "                              client to resume, in solo games (default 0, off)\n" +
+            "  --resume-capacity <n>       games kept for resuming at most, the least recently\n" +
+            "                              played are dropped first (default 10000)\n" +
+            "  --journal <directory>       log the resumable games there, to resume them after\n" +
+            "                              a restart; needs --resume-ttl (default off)\n" +
+            "  --journal-sync <millis>     how often the log is forced to disk (default 10)\n" +
+            "  --history <directory>       record the completed solo games there, in columns,\n" +
+            "                              for history.HistoryQuery (default off)\n" +
+            "  --log-level <level>         trace (adds board dumps), debug (adds every message),\n" +
+            "                              info, warn, error or off (default info)";
+
+    /**
+     * How the server runs its sessions.
+     */
+    public enum Mode {
+        /** a platform thread per connection */
+        THREAD,
+        /** a virtual thread per connection */
+        VIRTUAL,
+        /** a fixed set of selector event loops */
+        NIO
+    }
+
+    private int portNumber;
+    private int dimension;
+    private Mode mode;
+    private int loops;
+    private long mismatchDelayMillis;
+    private BoardKind boardKind;
+    private long seed;
+    private int poolSize;
+    private int roomSize;
+    private int adminPort;
+    private int watchPort;
+    private long resumeTtlSeconds;
+    private int resumeCapacity;
+    private String journalDirectory;
+    private long journalSyncMillis;
+    private String historyDirectory;
+    private Log.Level logLevel;
+
+    /**
+     * Create the default options for a port and dimension.
+     *
+     * @param portNumber the port to listen on
+     * @param dimension dimension of the gameboard
+     */
+    public ServerOptions(int portNumber, int dimension) {
+        this.portNumber = portNumber;
+        this.dimension = dimension;
+        this.mode = Mode.THREAD;
+        this.loops = Runtime.getRuntime().availableProcessors();
+        this.mismatchDelayMillis = ConcentrationSession.MISMATCH_DELAY_MILLIS;
+        this.boardKind = BoardKind.OBJECT;
+        this.seed = new SplittableRandom().nextLong();
+        this.poolSize = 8;
+        this.roomSize = 1;
+        this.adminPort = 0;
+        this.watchPort = 0;
+        this.resumeTtlSeconds = 0;
+        this.resumeCapacity = 10000;
+        this.journalDirectory = null;
+        this.journalSyncMillis = 10;
+        this.historyDirectory = null;
+        this.logLevel = Log.getLevel();
+    }
+
+    /**
+     * Parse the command line.
+     *
+     * @param args the command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if the arguments are malformed
+     */
+    public static ServerOptions parse(String[] args) {
+        if (args.length < 2 || args.length % 2 != 0) {
+            throw new IllegalArgumentException("Wrong number of arguments");
+        }
+        ServerOptions options = new ServerOptions(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        for (int i = 2; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--mode":
+                    options.mode = Mode.valueOf(value.toUpperCase());
+                    break;
+                case "--loops":
+                    options.loops = Integer.parseInt(value);
+                    break;
+                case "--mismatch-delay":
+                    options.mismatchDelayMillis = Long.parseLong(value);
+                    break;
+                case "--board":
+                    options.boardKind = BoardKind.valueOf(value.toUpperCase());
+                    break;
+                case "--seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                case "--pool":
+                    options.poolSize = Integer.parseInt(value);
+                    break;
+                case "--room-size":
+                    options.roomSize = Integer.parseInt(value);
+                    break;
+                case "--admin-port":
+                    options.adminPort = Integer.parseInt(value);
+                    break;
+                case "--watch-port":
+                    options.watchPort = Integer.parseInt(value);
+                    break;
+                case "--resume-ttl":
+                    options.resumeTtlSeconds = Long.parseLong(value);
+                    break;
+                case "--resume-capacity":
+                    options.resumeCapacity = Integer.parseInt(value);
+                    break;
+                case "--journal":
+                    options.journalDirectory = value;
+                    break;
+                case "--journal-sync":
+                    options.journalSyncMillis = Long.parseLong(value);
+                    break;
+                case "--history":
+                    options.historyDirectory = value;
+                    break;
+                case "--log-level":
+                    options.logLevel = Log.Level.valueOf(value.toUpperCase());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (options.loops < 1 || options.mismatchDelayMillis < 0 || options.poolSize < 0
+                || options.adminPort < 0 || options.adminPort > 65535
+                || options.watchPort < 0 || options.watchPort > 65535
+                || options.resumeTtlSeconds < 0 || options.resumeCapacity < 1 || options.journalSyncMillis < 1
+                || (options.roomSize != 1 && (options.roomSize < ConcentrationRoom.MIN_PLAYERS
+                        || options.roomSize > ConcentrationRoom.MAX_PLAYERS))) {
+            throw new IllegalArgumentException("Option out of range");
+        }
+        if (options.journalDirectory != null && options.resumeTtlSeconds == 0) {
+            throw new IllegalArgumentException("--journal needs --resume-ttl");
+        }
+        return options;
+    }
+
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getLoops() {
+        return loops;
+    }
+
+    public long getMismatchDelayMillis() {
+        return mismatchDelayMillis;
+    }
+
+    public BoardKind getBoardKind() {
+        return boardKind;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Get the number of players sharing a board.
+     *
+     * @return the room size, 1 for a game per player
+     */
+    public int getRoomSize() {
+        return roomSize;
+    }
+
+    /**
+     * Create the pool the server takes its boards from.
+     *
+     * @return a pool of the configured kind, size and seed
+     */
+    public BoardPool newBoardPool() {
+        return new BoardPool(boardKind, poolSize, seed);
+    }
+
+    /**
+     * Get the port of the admin endpoint.
+     *
+     * @return the port, 0 if there is no admin endpoint
+     */
+    public int getAdminPort() {
+        return adminPort;
+    }
+
+    /**
+     * Create the metrics registry of the server, and start the admin
+     * endpoint that serves it if there is one.
+     *
+     * @return the registry
+     */
+    public ServerMetrics newMetrics() {
+        ServerMetrics metrics = new ServerMetrics();
+        if (adminPort > 0) {
+            try {
+                new AdminServer(adminPort, metrics).start();
+            } catch (IOException e) {
+                Log.error("Could not listen on admin port %d: %s", adminPort, e.getMessage());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the port spectators connect to.
+     *
+     * @return the port, 0 if games cannot be watched
+     */
+    public int getWatchPort() {
+        return watchPort;
+    }
+
+    /**
+     * Start the spectator server if there is a spectator port.
+     *
+     * @param metrics where to count the spectators
+     * @return the spectator server, null if games cannot be watched
+     */
+    public SpectatorServer newSpectatorServer(ServerMetrics metrics) {
+        if (watchPort == 0) {
+            return null;
+        }
+        try {
+            SpectatorServer spectators = new SpectatorServer(watchPort, metrics);
+            spectators.start();
+            return spectators;
+        } catch (IOException e) {
+            Log.error("Could not listen on spectator port %d: %s", watchPort, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get how long the game of a lost connection is kept.
+     *
+     * @return the time in seconds, 0 if games cannot be resumed
+     */
+    public long getResumeTtlSeconds() {
+        return resumeTtlSeconds;
+    }
+
+    public int getResumeCapacity() {
+        return resumeCapacity;
+    }
+
+    /**
+     * Get where the resumable games are logged.
+     *
+     * @return the directory, null if they are not
+     */
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Create the writer of the game history.
+     *
+     * @return the writer, null if the games are not recorded
+     */
+    HistoryWriter newHistoryWriter() {
+        if (historyDirectory == null) {
+            return null;
+        }
+        try {
+            HistoryWriter history = new HistoryWriter(Paths.get(historyDirectory));
+            history.start();
+            return history;
+        } catch (IOException e) {
+            Log.error("Could not write the game history in %s: %s", historyDirectory, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Create the registry that keeps the games of lost connections, with
+     * the games its journal recovers, if the games are logged.
+     *
+     * @param metrics where to count the games kept and resumed
+     * @return the registry, null if games cannot be resumed
+     */
+    SessionRegistry newSessionRegistry(ServerMetrics metrics) {
+        if (resumeTtlSeconds == 0) {
+            return null;
+        }
+        GameJournal journal = null;
+        if (journalDirectory != null) {
+            try {
+                journal = new GameJournal(Paths.get(journalDirectory), boardKind, journalSyncMillis, metrics);
+                journal.start();
+            } catch (IOException e) {
+                Log.error("Could not open the journal in %s: %s", journalDirectory, e.getMessage());
+            }
+        }
+        return new SessionRegistry(resumeCapacity, resumeTtlSeconds * 1_000_000_000L, metrics, journal);
+    }
+
+    public Log.Level getLogLevel() {
+        return logLevel;
+    }
+}
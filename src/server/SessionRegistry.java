@@ -0,0 +1,164 @@
+package server;
+
+import common.Log;
+import game.GameBoard;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the games of lost connections for their clients to resume.  A
+ * client gets a token when its game starts; if its connection drops
+ * mid-game the board is kept under the token, and a new connection that
+ * presents the token takes the board up again where it was left.
+ * <p>
+ * The games are kept in the order their connections dropped, so the ones
+ * kept longest are the first dropped: once they are older than the time to
+ * live, or to make room when the registry is full.  Each game is resumed
+ * at most once.  Called from every connection's thread, so every method
+ * synchronizes; they only touch the ends of the map.
+ * <p>
+ * With a {@link GameJournal} the games also survive a restart: the ones
+ * the journal recovers are kept as if their connections had just dropped.
+ */
+class SessionRegistry {
+    /**
+     * A kept game and when its connection dropped.
+     */
+    static class Detached {
+        private final GameBoard board;
+        private final GameTally tally;
+        private final long nanos;
+
+        private Detached(GameBoard board, GameTally tally, long nanos) {
+            this.board = board;
+            this.tally = tally;
+            this.nanos = nanos;
+        }
+
+        GameBoard getBoard() {
+            return board;
+        }
+
+        /**
+         * @return how the game had gone, null if it was not tallied or was
+         *         recovered by the journal
+         */
+        GameTally getTally() {
+            return tally;
+        }
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final ServerMetrics metrics;
+    private final SecureRandom random;
+    /**
+     * where the games are logged, null if they are not
+     */
+    private final GameJournal journal;
+    /**
+     * the kept games by token, the oldest first
+     */
+    private final LinkedHashMap<String, Detached> detached;
+
+    /**
+     * Create a registry, holding the games a journal recovered.
+     *
+     * @param capacity the games kept at most
+     * @param ttlNanos how long a game is kept
+     * @param metrics where to count the games kept, resumed and dropped
+     * @param journal where the games are logged, null if they are not
+     */
+    SessionRegistry(int capacity, long ttlNanos, ServerMetrics metrics, GameJournal journal) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlNanos;
+        this.metrics = metrics;
+        this.random = new SecureRandom();
+        this.detached = new LinkedHashMap<>();
+        this.journal = journal;
+        if (journal != null) {
+            journal.getRecovered().forEach((token, board) -> detach(token, board, null));
+        }
+    }
+
+    /**
+     * Get where the games are logged.
+     *
+     * @return the journal, null if the games are not logged
+     */
+    GameJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Draw the token of a new game, hard to guess so that nobody takes over
+     * another client's game.
+     *
+     * @return the token
+     */
+    String issue() {
+        return Long.toUnsignedString(random.nextLong(), 16);
+    }
+
+    /**
+     * Keep the game of a lost connection.
+     *
+     * @param token the token of the game
+     * @param board its board, as the connection left it
+     * @param tally how the game has gone, null if it is not tallied
+     */
+    synchronized void detach(String token, GameBoard board, GameTally tally) {
+        long now = System.nanoTime();
+        expire(now);
+        if (detached.size() == capacity) {
+            Iterator<Map.Entry<String, Detached>> oldest = detached.entrySet().iterator();
+            String dropped = oldest.next().getKey();
+            Log.info("Session %s dropped to make room", dropped);
+            oldest.remove();
+            metrics.sessionExpired();
+            if (journal != null) {
+                journal.ended(dropped);
+            }
+        }
+        detached.put(token, new Detached(board, tally, now));
+        metrics.sessionDetached();
+    }
+
+    /**
+     * Take up a kept game again.
+     *
+     * @param token the token the client presented
+     * @return the game, null if no game is kept under the token, or it
+     *         was kept too long
+     */
+    synchronized Detached resume(String token) {
+        expire(System.nanoTime());
+        Detached game = detached.remove(token);
+        if (game == null) {
+            return null;
+        }
+        metrics.sessionResumed();
+        return game;
+    }
+
+    /**
+     * Drop the games kept longer than the time to live.
+     */
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Detached>> games = detached.entrySet().iterator();
+        while (games.hasNext()) {
+            Map.Entry<String, Detached> game = games.next();
+            if (now - game.getValue().nanos <= ttlNanos) {
+                break;
+            }
+            games.remove();
+            metrics.sessionExpired();
+            if (journal != null) {
+                journal.ended(game.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package server;
+
+import common.ConcentrationProtocol;
+import common.Log;
+import common.TextCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Streams running games to spectators, on a port of its own.  A spectator
+ * connects, sends "WATCH &lt;game id&gt;" (the id is the seed of the board),
+ * and gets the board dimension, a SNAPSHOT of the cards as they stand, and
+ * every update the players get from then on, in text, until the game ends.
+ * A board with too many pairs for a snapshot can only be watched before
+ * its first card is turned over.
+ * <p>
+ * One thread with one selector serves every spectator.  The games only
+ * append to their {@link GameFeed} and wake this thread, so spectators
+ * never hold up a game: a spectator's updates are copied from the shared
+ * frames into its own buffer, as many as fit, and written together, and a
+ * spectator that falls more than {@link #MAX_LAG} updates behind is
+ * dropped.
+ */
+public class SpectatorServer implements Runnable {
+    /**
+     * updates a spectator may fall behind before it is dropped
+     */
+    final static int MAX_LAG = 4096;
+    /**
+     * bytes written to a spectator at once
+     */
+    private final static int OUT_CAPACITY = 8192;
+    /**
+     * the kernel's send buffer of a spectator; small, so that thousands of
+     * spectators hold little memory and a slow one is noticed early
+     */
+    private final static int SEND_BUFFER = 64 * 1024;
+
+    /**
+     * One watching connection.  Touched by the spectator thread only.
+     */
+    class Spectator {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+        private GameFeed feed;
+        /**
+         * the last frame copied to the output
+         */
+        private GameFeed.Frame cursor;
+        /**
+         * close once the output has been written
+         */
+        private boolean closing;
+
+        private Spectator(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.in = ByteBuffer.allocate(TextCodec.MAX_LINE);
+            this.out = ByteBuffer.allocate(OUT_CAPACITY);
+        }
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ServerMetrics metrics;
+    /**
+     * the games that can be watched, by id
+     */
+    private final Map<Long, GameFeed> feeds;
+    /**
+     * the feeds with updates the spectator thread has not seen yet
+     */
+    private final Queue<GameFeed> changed;
+
+    /**
+     * Bind the spectator port.
+     *
+     * @param portNumber the port
+     * @param metrics where to count the spectators
+     * @throws IOException if the port cannot be bound
+     */
+    public SpectatorServer(int portNumber, ServerMetrics metrics) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(portNumber), ConcentrationServer.ACCEPT_BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.metrics = metrics;
+        this.feeds = new ConcurrentHashMap<>();
+        this.changed = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Start serving spectators on a daemon thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "concentration-spectators");
+        thread.setDaemon(true);
+        thread.start();
+        Log.info("Spectators on port %d", serverChannel.socket().getLocalPort());
+    }
+
+    /**
+     * Make a game watchable.  Called by the game's thread.
+     *
+     * @param gameId the id of the game, the seed of its board
+     * @param dimension the dimension of its board
+     * @param cards the cards of a resumed game as in a SNAPSHOT, null for a
+     *              new game
+     * @return the feed to publish the updates to, null if a game with the
+     *         same id is already watchable
+     */
+    GameFeed open(long gameId, int dimension, CharSequence cards) {
+        GameFeed feed = new GameFeed(this, gameId, dimension);
+        if (cards != null) {
+            feed.restore(cards);
+        }
+        return feeds.putIfAbsent(gameId, feed) == null ? feed : null;
+    }
+
+    /**
+     * A feed has a new update.  Wakes the spectator thread once, however
+     * many updates arrive before it gets to them.
+     */
+    void changed(GameFeed feed) {
+        if (feed.changed.compareAndSet(false, true)) {
+            changed.add(feed);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * A feed has ended; nobody new can watch it.
+     */
+    void ended(GameFeed feed) {
+        feeds.remove(feed.getGameId(), feed);
+        changed(feed);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                Log.warn("Unexpected error: %s", e.getMessage());
+                return;
+            }
+            GameFeed feed;
+            while ((feed = changed.poll()) != null) {
+                feed.changed.set(false);
+                // backwards, as a spectator may be removed meanwhile
+                for (int i = feed.spectators.size() - 1; i >= 0; --i) {
+                    flush(feed.spectators.get(i));
+                }
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Spectator spectator = (Spectator) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    onReadable(spectator);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(spectator);
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Spectator(channel, key));
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+        }
+    }
+
+    private void onReadable(Spectator spectator) {
+        try {
+            if (spectator.channel.read(spectator.in) < 0) {
+                close(spectator);
+                return;
+            }
+        } catch (IOException e) {
+            close(spectator);
+            return;
+        }
+        if (spectator.feed != null || spectator.closing) {
+            // nothing more is expected from a spectator
+            spectator.in.clear();
+            return;
+        }
+        ByteBuffer in = spectator.in;
+        for (int i = 0; i < in.position(); ++i) {
+            if (in.get(i) == '\n') {
+                watch(spectator, new String(in.array(), 0, i, StandardCharsets.US_ASCII).trim());
+                in.clear();
+                return;
+            }
+        }
+        if (!in.hasRemaining()) {
+            refuse(spectator, "Request too long");
+        }
+    }
+
+    /**
+     * Handle the request of a new spectator.
+     */
+    private void watch(Spectator spectator, String request) {
+        String[] words = request.split(" ");
+        GameFeed feed = null;
+        if (words.length == 2 && words[0].equals(ConcentrationProtocol.WATCH)) {
+            try {
+                feed = feeds.get(Long.parseLong(words[1]));
+            } catch (NumberFormatException e) {
+                refuse(spectator, "Invalid game id");
+                return;
+            }
+        } else {
+            refuse(spectator, "Expected " + ConcentrationProtocol.WATCH);
+            return;
+        }
+        if (feed == null || feed.isEnded()) {
+            refuse(spectator, "No such game");
+            return;
+        }
+        feed.spectators.add(spectator);
+        // counted before the tail is read, and the cards read after it, so no
+        // update is missed
+        feed.setWatchers(feed.spectators.size());
+        GameFeed.Frame cursor = feed.getTail();
+        String cards = feed.snapshot();
+        if (cards == null) {
+            feed.spectators.remove(spectator);
+            feed.setWatchers(feed.spectators.size());
+            refuse(spectator, "Game too large to join once under way");
+            return;
+        }
+        spectator.feed = feed;
+        spectator.cursor = cursor;
+        metrics.spectatorJoined();
+        TextCodec.putBoardDim(spectator.out, feed.getDimension());
+        if (!cards.isEmpty()) {
+            TextCodec.putSnapshot(spectator.out, feed.getDimension(), cards);
+        }
+        flush(spectator);
+    }
+
+    private void refuse(Spectator spectator, String message) {
+        TextCodec.putError(spectator.out, message);
+        spectator.closing = true;
+        flush(spectator);
+    }
+
+    /**
+     * Copy the spectator's pending updates into its buffer and write as
+     * much as the channel takes, then drop the spectator if it has fallen
+     * too far behind, or close it once its game has ended and it has been
+     * sent everything.
+     */
+    private void flush(Spectator spectator) {
+        if (!spectator.channel.isOpen()) {
+            return;
+        }
+        ByteBuffer out = spectator.out;
+        try {
+            while (true) {
+                if (spectator.feed != null) {
+                    GameFeed.Frame next;
+                    while ((next = spectator.cursor.next) != null && out.remaining() >= next.bytes.length) {
+                        out.put(next.bytes);
+                        spectator.cursor = next;
+                    }
+                }
+                if (out.position() == 0) {
+                    break;
+                }
+                out.flip();
+                spectator.channel.write(out);
+                out.compact();
+                if (out.position() > 0) {
+                    // the channel is full
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close(spectator);
+            return;
+        }
+        boolean pending = out.position() > 0;
+        GameFeed feed = spectator.feed;
+        if (feed != null && feed.getTail().sequence - spectator.cursor.sequence > MAX_LAG) {
+            Log.info("Spectator of game %d dropped, %d updates behind", feed.getGameId(),
+                    feed.getTail().sequence - spectator.cursor.sequence);
+            metrics.spectatorDropped();
+            close(spectator);
+        } else if (!pending && (spectator.closing || (feed != null && feed.isEnded()
+                && spectator.cursor.next == null))) {
+            close(spectator);
+        } else {
+            spectator.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(Spectator spectator) {
+        GameFeed feed = spectator.feed;
+        if (feed != null) {
+            spectator.feed = null;
+            feed.spectators.remove(spectator);
+            feed.setWatchers(feed.spectators.size());
+            metrics.spectatorLeft();
+        }
+        spectator.key.cancel();
+        try {
+            spectator.channel.close();
+        } catch (IOException e) {
+            Log.warn("Unexpected error: %s", e.getMessage());
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package view;
 
+import common.Log;
 import controller.ConcentrationController;
 import game.ConcentrationCard;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
+import javafx.scene.effect.ColorAdjust;
 import javafx.application.Application;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
@@ -15,22 +17,33 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import model.ConcentrationModel;
+import model.ModelChange;
 import model.Observer;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 /**
  * GUI Class
  *
  */
-public class ConcentrationGUI extends Application implements Observer<ConcentrationModel> {
+public class ConcentrationGUI extends Application implements Observer<List<ModelChange>> {
     public static String[] imageNames = {
             "abra.png", "bulbasaur.png", "charizard.png", "diglett.png", "golbat.png", "golem.png", "jigglypuff.png",
             "magikarp.png", "meowth.png", "mewtwo.png", "natu.png", "pidgey.png", "pikachu.png", "poliwag.png",
             "psyduck.png", "rattata.png", "slowpoke.png", "snorlak.png", "squirtle.png"};
     public static String pokeBallName = "pokeball.png";
 
-    private List<Image> images;
-    private Image pokeBallImage;
+    /**
+     * when the GUI class was loaded, for the time to the first frame
+     */
+    private final static long LAUNCHED = System.nanoTime();
+
+    private PokemonImages images;
+    /**
+     * the hue shift of each round of pictures, shared by the cards that
+     * show it; null for the first round, which is not shifted
+     */
+    private List<ColorAdjust> hues;
 
     private ConcentrationModel model;
     // Client is also controller;
@@ -38,65 +51,91 @@ public class ConcentrationGUI extends Application implements Observer<Concentrat
 
     private PokemonButton[][] buttons;
 
+    private Stage stage;
+    private BorderPane borderPane;
+    /**
+     * shown instead of the cards until the board arrives
+     */
+    private Label placeholder;
+    /**
+     * the server, "host:port"
+     */
+    private String address;
+
     private Label label1;
     private Label label2;
     private Label label3;
 
-    private Map<Character, Integer> letterToImageIndex;
+    /**
+     * the notifications of the model's changes, run on the JavaFX thread
+     * once the window is built
+     */
+    private Queue<Runnable> pulseTasks;
+    /**
+     * has the window been built?  Touched by the JavaFX thread only
+     */
+    private boolean started;
+
 
     /**
      * Constructor for GUI class
-     * Assigns images to imageNames using stream
      * Initialize model and controller
      * create labels objects
 
      */
     public ConcentrationGUI() {
-        images = new ArrayList<>();
-        for (String imageName : imageNames) {
-            Image imageRead = new Image(getClass().getResourceAsStream(
-                    "images/" + imageName));
-            images.add(imageRead);
-        }
-        Collections.shuffle(images);
-        pokeBallImage = new Image(getClass().getResourceAsStream(
-                "images/" + pokeBallName));
         model = new ConcentrationModel();
         controller = null;
 
         label1 = new Label();
         label2 = new Label();
         label3 = new Label();
+        placeholder = new Label();
 
-        this.letterToImageIndex = new HashMap<>();
-        model.addObserver(this);
+        hues = new ArrayList<>();
+        hues.add(null);
+        pulseTasks = new ConcurrentLinkedQueue<>();
+        model.addChangeObserver(this);
+        // the model batches its changes until the task runs, so a burst of
+        // changes costs one refresh, and nothing runs while the game is idle
+        model.setChangeExecutor(task -> {
+            pulseTasks.add(task);
+            Platform.runLater(this::runPulseTasks);
+        });
     }
     /**
-     * init method that parses arguments to assign prtNumber and gameboard Dimension
-     * creates the game board
+     * init method that parses arguments to assign prtNumber
+     * and the optional protocol (text by default)
+     * starts connecting, in the background, and loading the back of the
+     * cards, or the sprite atlas if "atlas" is given
      */
     @Override
     public void init() throws Exception {
         List<String> args = getParameters().getRaw();
         String hostName = args.get(0);
         int portNumber = Integer.parseInt(args.get(1));
-        controller = new ConcentrationController(hostName, portNumber, model);
-        int dim = controller.getBoardDimension();
-        model.initBoard(dim);
-        buttons = new PokemonButton[dim][dim];
+        boolean binary = args.contains("binary");
+        boolean atlas = args.contains("atlas");
+        address = hostName + ":" + portNumber;
+        controller = new ConcentrationController(hostName, portNumber, model, binary);
+        controller.start();
+        images = new PokemonImages(atlas);
     }
     /**
-     * Start method. sets up GridPane and BorderPane to structure gamebaord
+     * Start method. sets up BorderPane with a placeholder until the
+     * gameboard arrives
      * Stages scene
      */
     @Override
     public void start(Stage stage) throws Exception {
-        GridPane gridPane = createButtons();
+        this.stage = stage;
+        placeholder.setFont(new Font("Arial", 14));
+        placeholder.setText("Connecting to " + address + "...");
 
         BorderPane labelPane = createLabels();
 
-        BorderPane borderPane = new BorderPane();
-        borderPane.setCenter(gridPane);
+        borderPane = new BorderPane();
+        borderPane.setCenter(placeholder);
         borderPane.setBottom(labelPane);
         BorderPane.setAlignment(labelPane, Pos.CENTER);
 
@@ -105,42 +144,60 @@ public class ConcentrationGUI extends Application implements Observer<Concentrat
         stage.setScene(scene);
         stage.setTitle("ConcentrationGUI");
         stage.show();
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                Log.info("First frame after %d ms", (now - LAUNCHED) / 1_000_000);
+                stop();
+            }
+        }.start();
+        started = true;
+        runPulseTasks();
     }
     /**
-     * Update method
+     * Run the notifications of the model's changes, once the window is
+     * built; the ones that come before wait for it.
      */
-    @Override
-    public void update(ConcentrationModel concentrationModel) {
-        if (Platform.isFxApplicationThread()) {
-            this.refresh(model);
-        } else {
-            Platform.runLater(() -> this.refresh(model));
+    private void runPulseTasks() {
+        if (!started) {
+            return;
         }
+        Runnable task;
+        while ((task = pulseTasks.poll()) != null) {
+            task.run();
+        }
+    }
+    /**
+     * Update method.  Called on the JavaFX thread with the changes since
+     * the previous call.
+     */
+    @Override
+    public void update(List<ModelChange> changes) {
+        this.refresh(changes);
     }
     /**
      * Refresh method.
-     * updates the game board with new game board state
+     * turns over the cards that changed; the others are not touched
      */
-    public void refresh(ConcentrationModel concentrationModel){
-        int dim = concentrationModel.getDim();
-        for (int row = 0; row < dim; ++row) {
-            for (int col = 0; col < dim; ++col) {
-                PokemonButton button = buttons[row][col];
-                if(concentrationModel.isHidden(row, col)){
-                    button.setGraphic(new ImageView(pokeBallImage));
-                } else {
-                    char letter = concentrationModel.getLetter(row, col);
-                    if(letterToImageIndex.containsKey(letter)){
-                        int imageIndex = letterToImageIndex.get(letter);
-                        Image imageToUse = images.get(imageIndex);
-                        button.setGraphic(new ImageView(imageToUse));
-                    } else {
-                        int nextIndex = letterToImageIndex.size();
-                        letterToImageIndex.put(letter, nextIndex);
-                        Image imageToUse = images.get(nextIndex);
-                        button.setGraphic(new ImageView(imageToUse));
+    public void refresh(List<ModelChange> changes) {
+        for (ModelChange change : changes) {
+            switch (change.getKind()) {
+                case BOARD:
+                    showBoard();
+                    break;
+                case REVEALED:
+                case MATCHED:
+                    buttons[change.getRow()][change.getCol()].show(change.getSymbol());
+                    break;
+                case HIDDEN:
+                    buttons[change.getRow()][change.getCol()].show(ConcentrationModel.HIDDEN_SYMBOL);
+                    break;
+                case STATUS:
+                    if (change.getStatus() == ConcentrationModel.Status.ERROR && buttons == null) {
+                        placeholder.setText("Cannot connect to " + address);
                     }
-                }
+                    break;
             }
         }
         // refresh labels.
@@ -148,6 +205,32 @@ public class ConcentrationGUI extends Application implements Observer<Concentrat
         label2.setText("Matches: " + this.model.getMatches());
         label3.setText(this.model.getStatus().toString());
     }
+    /**
+     * The effect on a symbol's picture: each time round the pictures shifts
+     * their hue, so that every symbol still looks different.  Null for the
+     * first round.
+     */
+    private ColorAdjust symbolEffect(int symbol) {
+        int round = symbol / images.count();
+        while (hues.size() <= round) {
+            // golden ratio steps spread the hues of any number of rounds
+            double hue = (hues.size() * 0.618033988749895) % 1.0;
+            hues.add(new ColorAdjust(hue * 2 - 1, 0, 0, 0));
+        }
+        return hues.get(round);
+    }
+    /**
+     * Replace the placeholder, or the cards of the last board, with the
+     * cards of the board that has arrived; those of a resumed game start
+     * face up where they were.
+     */
+    private void showBoard() {
+        int dim = model.getDim();
+        images.prepare(dim * dim / 2);
+        buttons = new PokemonButton[dim][dim];
+        borderPane.setCenter(createButtons());
+        stage.sizeToScene();
+    }
     /**
      * this class creates the grid of button/images that the user will select to play the Concentration game
      */
@@ -157,11 +240,12 @@ public class ConcentrationGUI extends Application implements Observer<Concentrat
         for (int row = 0; row < dim; ++row) {
             for (int col = 0; col < dim; ++col) {
                 PokemonButton button = new PokemonButton(row, col);
+                button.show(model.getSymbol(row, col));
                 buttons[row][col] = button;
                 button.setOnAction(event -> {
                     int buttonRow = button.getRow();
                     int buttonCol = button.getCol();
-                    this.controller.createClientThread(buttonRow, buttonCol);
+                    this.controller.reveal(buttonRow, buttonCol);
                 });
                 // JavaFX uses (x, y) pixel coordinates instead of
                 // (row, col), so must invert when adding
@@ -194,11 +278,39 @@ public class ConcentrationGUI extends Application implements Observer<Concentrat
     private class PokemonButton extends Button {
         private int row;
         private int col;
+        /**
+         * the button's picture, kept for the whole game
+         */
+        private ImageView view;
+        /**
+         * the symbol shown, {@link ConcentrationModel#HIDDEN_SYMBOL} for the pokeball
+         */
+        private int symbol;
 
         public PokemonButton(int row, int col) {
             this.row = row;
             this.col = col;
-            this.setGraphic(new ImageView(pokeBallImage));
+            this.view = new ImageView();
+            this.symbol = ConcentrationModel.HIDDEN_SYMBOL;
+            images.showPokeBall(view);
+            this.setGraphic(view);
+        }
+
+        /**
+         * Show a symbol, or the pokeball for {@link ConcentrationModel#HIDDEN_SYMBOL}.
+         */
+        public void show(int symbol) {
+            if (symbol == this.symbol) {
+                return;
+            }
+            this.symbol = symbol;
+            if (symbol == ConcentrationModel.HIDDEN_SYMBOL) {
+                images.showPokeBall(view);
+                view.setEffect(null);
+            } else {
+                images.showSymbol(view, symbol);
+                view.setEffect(symbolEffect(symbol));
+            }
         }
 
         public int getRow() {
@@ -211,8 +323,8 @@ public class ConcentrationGUI extends Application implements Observer<Concentrat
     }
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Usage: java ConcentrationGUI <host name> <port number>");
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Usage: java ConcentrationGUI <host name> <port number> [text | binary] [atlas]");
             System.exit(1);
         }
         Application.launch(args);
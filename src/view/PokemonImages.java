@@ -0,0 +1,186 @@
+package view;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pictures of the cards, shuffled for each game.  They are decoded
+ * off the JavaFX thread: the pokeball right away, the pictures the board
+ * needs all at once, in the background and in parallel, as soon as the
+ * board is known, and any other picture only when it is first shown.  A card shows its picture as soon as it has
+ * been decoded.
+ * <p>
+ * With the {@link SpriteAtlas}, the one atlas is decoded instead, also in
+ * the background, and each card shows a tile of it; the tile size is known
+ * once the atlas is decoded, so the cards shown before then get their
+ * tiles when it is.
+ */
+class PokemonImages {
+    /**
+     * the picture of each symbol, by symbol modulo the number of pictures
+     */
+    private final List<Integer> order;
+    /**
+     * the pictures loaded so far, by their number in the image names;
+     * touched by the JavaFX thread only once the game is on
+     */
+    private final Image[] pictures;
+    private final Image pokeBall;
+    /**
+     * the atlas, null when the pictures are loaded one by one
+     */
+    private final Image atlas;
+    /**
+     * the part of the atlas each tile takes up, null until it is decoded;
+     * touched by the JavaFX thread only
+     */
+    private Rectangle2D[] tiles;
+    /**
+     * the tile each card waits to show until the atlas is decoded
+     */
+    private final Map<ImageView, Integer> waiting;
+
+    /**
+     * Start loading the back of the cards, or the whole atlas.
+     *
+     * @param useAtlas whether to load the sprite atlas instead of the pictures
+     */
+    PokemonImages(boolean useAtlas) {
+        int count = ConcentrationGUI.imageNames.length;
+        this.order = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            order.add(i);
+        }
+        Collections.shuffle(order);
+        this.pictures = new Image[count];
+        this.waiting = new LinkedHashMap<>();
+        if (useAtlas) {
+            this.atlas = load(SpriteAtlas.atlasName);
+            this.pokeBall = null;
+        } else {
+            this.atlas = null;
+            this.pokeBall = load(ConcentrationGUI.pokeBallName);
+        }
+    }
+
+    /**
+     * Start loading the pictures a board needs.  Returns right away.
+     *
+     * @param pairs the number of pairs on the board
+     */
+    void prepare(int pairs) {
+        if (atlas == null) {
+            for (int symbol = 0; symbol < Math.min(pairs, pictures.length); ++symbol) {
+                picture(symbol);
+            }
+        }
+    }
+
+    /**
+     * Get the number of different pictures.  Boards with more pairs cycle
+     * through them.
+     *
+     * @return the number of pictures
+     */
+    int count() {
+        return pictures.length;
+    }
+
+    /**
+     * Show the picture of a symbol.
+     *
+     * @param view the view of a card
+     * @param symbol the symbol
+     */
+    void showSymbol(ImageView view, int symbol) {
+        int picture = order.get(symbol % pictures.length);
+        if (atlas != null) {
+            showTile(view, picture);
+        } else {
+            view.setImage(picture(symbol));
+        }
+    }
+
+    /**
+     * Show the pokeball, the back of every card.
+     *
+     * @param view the view of a card
+     */
+    void showPokeBall(ImageView view) {
+        if (atlas != null) {
+            showTile(view, SpriteAtlas.pokeBallTile());
+        } else {
+            view.setImage(pokeBall);
+        }
+    }
+
+    private void showTile(ImageView view, int number) {
+        if (tiles == null && !cutTiles()) {
+            if (waiting.isEmpty()) {
+                // the progress is updated on the JavaFX thread, so it cannot
+                // reach 1 between the check and the listener
+                atlas.progressProperty().addListener((progress, was, now) -> {
+                    if (now.doubleValue() >= 1 && cutTiles()) {
+                        waiting.forEach(this::showTile);
+                        waiting.clear();
+                    }
+                });
+            }
+            waiting.put(view, number);
+            return;
+        }
+        view.setImage(atlas);
+        view.setViewport(tiles[number]);
+    }
+
+    /**
+     * Cut the atlas into its tiles, if it has been decoded.
+     *
+     * @return whether the tiles are known
+     */
+    private boolean cutTiles() {
+        if (tiles != null) {
+            return true;
+        }
+        if (atlas.getProgress() < 1 || atlas.isError()) {
+            return false;
+        }
+        double tile = atlas.getWidth() / SpriteAtlas.COLUMNS;
+        tiles = new Rectangle2D[SpriteAtlas.tiles()];
+        for (int i = 0; i < tiles.length; ++i) {
+            tiles[i] = new Rectangle2D((i % SpriteAtlas.COLUMNS) * tile, (i / SpriteAtlas.COLUMNS) * tile,
+                    tile, tile);
+        }
+        return true;
+    }
+
+    /**
+     * Get the picture of a symbol, starting to load it if nobody has asked
+     * for it yet.
+     */
+    private Image picture(int symbol) {
+        int picture = order.get(symbol % pictures.length);
+        if (pictures[picture] == null) {
+            pictures[picture] = load(ConcentrationGUI.imageNames[picture]);
+        }
+        return pictures[picture];
+    }
+
+    /**
+     * Start decoding a picture in the background.
+     */
+    private Image load(String name) {
+        return new Image(url(name), true);
+    }
+
+    private static String url(String name) {
+        return PokemonImages.class.getResource("images/" + name).toExternalForm();
+    }
+}
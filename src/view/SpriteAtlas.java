@@ -0,0 +1,79 @@
+package view;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The layout of the sprite atlas: every picture of {@link ConcentrationGUI#imageNames},
+ * then the pokeball, in square tiles of one size, {@link #COLUMNS} to a
+ * row.  The GUI can decode the one atlas instead of twenty pictures, and
+ * shows a tile of it on each card.
+ * <p>
+ * Run this class to pack the atlas from the pictures, scaled to the tile
+ * size the cards are shown at, so the GUI never has to scale them:
+ * <pre>
+ *     java view.SpriteAtlas src/view/images [tile size]
+ * </pre>
+ */
+public class SpriteAtlas {
+    public static String atlasName = "atlas.png";
+    /**
+     * the tiles in a row of the atlas
+     */
+    final static int COLUMNS = 5;
+    /**
+     * the tile size the atlas is packed at by default, that of the pictures
+     */
+    private final static int DEFAULT_TILE = 100;
+
+    private SpriteAtlas() {
+    }
+
+    /**
+     * Get the tile of the pokeball, after the pictures.
+     *
+     * @return its number in the atlas
+     */
+    static int pokeBallTile() {
+        return ConcentrationGUI.imageNames.length;
+    }
+
+    /**
+     * Get the number of tiles in the atlas.
+     *
+     * @return the pictures and the pokeball
+     */
+    static int tiles() {
+        return ConcentrationGUI.imageNames.length + 1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java SpriteAtlas <images directory> [tile size]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        int tile = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TILE;
+        int rows = (tiles() + COLUMNS - 1) / COLUMNS;
+        BufferedImage atlas = new BufferedImage(COLUMNS * tile, rows * tile, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = atlas.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        for (int i = 0; i < tiles(); ++i) {
+            String name = i < pokeBallTile() ? ConcentrationGUI.imageNames[i] : ConcentrationGUI.pokeBallName;
+            BufferedImage picture = ImageIO.read(new File(directory, name));
+            if (picture == null) {
+                throw new IOException("Cannot read " + name);
+            }
+            graphics.drawImage(picture, (i % COLUMNS) * tile, (i / COLUMNS) * tile, tile, tile, null);
+        }
+        graphics.dispose();
+        File file = new File(directory, atlasName);
+        ImageIO.write(atlas, "png", file);
+        System.out.println("Packed " + tiles() + " tiles of " + tile + " pixels into " + file);
+    }
+}